@@ -0,0 +1,122 @@
+package com.muro.ai.chess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A bitbase for an ending of king and one piece against a lone king (KQK, KRK or KPK), read from a memory-mapped file
+ * written by BitbaseGenerator.
+ *
+ * The lone king can never win these endings, so one bit per position is enough to hold the exact result: set if the
+ * side with the piece (the strong side) wins with best play, clear if the position is a draw or cannot arise. Positions
+ * are indexed from the strong side's point of view, as if it were white, by
+ *
+ * 		bit 18		1 if the lone king is to move
+ *		bits 12-17	the strong king's square
+ *		bits  6-11	the piece's square
+ *		bits  0-5	the lone king's square
+ *
+ * with squares given as bit indices (see Bitboards). A position with black as the strong side is flipped top to bottom
+ * first. Each file thus holds 2 * 64 * 64 * 64 bits, or 64 kilobytes.
+ */
+public final class Bitbase {
+
+	/**
+	 * Opens the bitbase stored in the specified file.
+	 *
+	 * @param bitbaseFile a file written by BitbaseGenerator
+	 * @throws IOException if the file cannot be read or is not a bitbase
+	 */
+	public Bitbase(File bitbaseFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(bitbaseFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if (channel.size() != TABLE_BYTES) {
+				throw new IOException(bitbaseFile + " is not a bitbase");
+			}
+			bits = channel.map(FileChannel.MapMode.READ_ONLY, 0, TABLE_BYTES);
+		} finally {
+			// The mapping stays valid after the file is closed.
+			file.close();
+		}
+	}
+
+	/**
+	 * Wraps a bitbase held in memory, as it is being generated.
+	 *
+	 * @param bits the bits of the table, TABLE_BYTES long
+	 */
+	Bitbase(ByteBuffer bits) {
+		this.bits = bits;
+	}
+
+	/**
+	 * Looks up the result of the specified position of the ending.
+	 *
+	 * @param strongKing the strong king's square, on the 0x88 board
+	 * @param piece the strong side's piece's square, on the 0x88 board
+	 * @param weakKing the lone king's square, on the 0x88 board
+	 * @param strongSide the player with the piece
+	 * @param sideToMove the player to move
+	 * @return true if the strong side wins, false if the position is drawn
+	 */
+	public boolean isWin(int strongKing, int piece, int weakKing, int strongSide, int sideToMove) {
+
+		// Look at the position as if the strong side were white.
+		int flip = (strongSide == ChessGame.WHITE_PLAYER) ? 0 : 56;
+		int index = index(sideToMove != strongSide, Bitboards.toBitIndex(strongKing) ^ flip,
+				Bitboards.toBitIndex(piece) ^ flip, Bitboards.toBitIndex(weakKing) ^ flip);
+		return isWin(index);
+	}
+
+	/**
+	 * Looks up the result of the position with the specified index.
+	 *
+	 * @param index the position's index (see index)
+	 * @return true if the strong side wins
+	 */
+	boolean isWin(int index) {
+		return (bits.get(index >>> 3) & (1 << (index & 7))) != 0;
+	}
+
+	/**
+	 * Computes the index of a position, seen from the strong side as white.
+	 *
+	 * @param weakToMove whether the lone king is to move
+	 * @param strongKing the strong king's bit index
+	 * @param piece the piece's bit index
+	 * @param weakKing the lone king's bit index
+	 * @return the position's index
+	 */
+	static int index(boolean weakToMove, int strongKing, int piece, int weakKing) {
+		return ((weakToMove ? 1 : 0) << 18) | (strongKing << 12) | (piece << 6) | weakKing;
+	}
+
+	/**
+	 * Returns the file name under which the bitbase for the specified piece is stored.
+	 *
+	 * @param piece QUEEN, ROOK or PAWN
+	 * @return a file name such as "KQK.bitbase"
+	 */
+	public static String fileName(int piece) {
+		return "K" + ChessPiece.PIECE_SYMBOLS[piece] + "K.bitbase";
+	}
+
+	/**
+	 * The bits of the table.
+	 */
+	private final ByteBuffer bits;
+
+	/**
+	 * The number of positions in a table.
+	 */
+	static final int TABLE_SIZE = 2 * 64 * 64 * 64;
+
+	/**
+	 * The size of a table, in bytes.
+	 */
+	static final int TABLE_BYTES = TABLE_SIZE / 8;
+}
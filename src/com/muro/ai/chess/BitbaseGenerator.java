@@ -0,0 +1,250 @@
+package com.muro.ai.chess;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Generates the KQK, KRK and KPK bitbases (see Bitbase) by retrograde analysis.
+ *
+ * Starting from the checkmates, each pass works one ply further back from the positions already known to be won: a
+ * position with the strong side to move is won if some move reaches a won position, and one with the lone king to
+ * move is won if every move does. Once a pass finds nothing new, every position left over is a draw. Pawn promotions
+ * are looked up in the KQK and KRK tables, which are therefore generated first.
+ */
+public final class BitbaseGenerator {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 1) {
+			System.err.println("Usage: BitbaseGenerator directory");
+			return;
+		}
+
+		File directory = new File(args[0]);
+		directory.mkdirs();
+
+		Bitbase[] tables = new Bitbase[ChessPiece.PIECE_SYMBOLS.length];
+		for (int piece : new int[] { ChessPiece.QUEEN, ChessPiece.ROOK, ChessPiece.PAWN }) {
+			long start = System.currentTimeMillis();
+			BitbaseGenerator theGenerator = new BitbaseGenerator(piece, tables);
+			byte[] bits = theGenerator.generate();
+			tables[piece] = new Bitbase(ByteBuffer.wrap(bits));
+
+			FileOutputStream out = new FileOutputStream(new File(directory, Bitbase.fileName(piece)));
+			try {
+				out.write(bits);
+			} finally {
+				out.close();
+			}
+
+			System.out.println(Bitbase.fileName(piece) + ": " + theGenerator.nWins + " won positions, "
+					+ theGenerator.nPasses + " passes, " + (System.currentTimeMillis() - start) + " ms");
+		}
+	}
+
+	/**
+	 * Constructs a generator for the ending of king and the specified piece against king.
+	 *
+	 * @param piece QUEEN, ROOK or PAWN
+	 * @param tables the bitbases already generated, indexed by piece value, for the pawn's promotions
+	 */
+	BitbaseGenerator(int piece, Bitbase[] tables) {
+		this.piece = piece;
+		this.tables = tables;
+	}
+
+	/**
+	 * Solves the ending.
+	 *
+	 * @return the bits of the bitbase
+	 */
+	byte[] generate() {
+
+		// Mark the positions that can arise in a game.
+		for (int index = 0; index < Bitbase.TABLE_SIZE; index+=1) {
+			legal[index] = isLegal(index);
+		}
+
+		// Work back from the mates until no more wins turn up.
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			nPasses+=1;
+			for (int index = 0; index < Bitbase.TABLE_SIZE; index+=1) {
+				if (legal[index] && !win[index] && isWonNow(index)) {
+					win[index] = true;
+					nWins+=1;
+					changed = true;
+				}
+			}
+		}
+
+		byte[] bits = new byte[Bitbase.TABLE_BYTES];
+		for (int index = 0; index < Bitbase.TABLE_SIZE; index+=1) {
+			if (win[index]) {
+				bits[index >>> 3] |= 1 << (index & 7);
+			}
+		}
+		return bits;
+	}
+
+	/**
+	 * Indicates whether the position with the specified index can arise: no two men on one square, the kings apart,
+	 * no pawn on the first or last rank, and the lone king not in check with the strong side to move.
+	 */
+	private boolean isLegal(int index) {
+		boolean weakToMove = (index >>> 18) != 0;
+		int strongKing = (index >>> 12) & 63;
+		int pieceSquare = (index >>> 6) & 63;
+		int weakKing = index & 63;
+
+		if (strongKing == pieceSquare || strongKing == weakKing || pieceSquare == weakKing) {
+			return false;
+		}
+		if ((Bitboards.KING_ATTACKS[strongKing] & (1L << weakKing)) != 0) {
+			return false;
+		}
+		if (piece == ChessPiece.PAWN && ((1L << pieceSquare) & (Bitboards.RANK_1 | Bitboards.RANK_8)) != 0) {
+			return false;
+		}
+		return weakToMove || (pieceAttacks(pieceSquare, 1L << strongKing) & (1L << weakKing)) == 0;
+	}
+
+	/**
+	 * Indicates whether the position with the specified index can be shown to be won from the wins found so far.
+	 */
+	private boolean isWonNow(int index) {
+		int strongKing = (index >>> 12) & 63;
+		int pieceSquare = (index >>> 6) & 63;
+		int weakKing = index & 63;
+
+		if ((index >>> 18) == 0) {
+			return isStrongWin(strongKing, pieceSquare, weakKing);
+		}
+		return isWeakLoss(strongKing, pieceSquare, weakKing);
+	}
+
+	/**
+	 * Indicates whether the strong side, to move, has a move to a position already known to be won.
+	 */
+	private boolean isStrongWin(int strongKing, int pieceSquare, int weakKing) {
+
+		// King moves, keeping away from the other king.
+		long targets = Bitboards.KING_ATTACKS[strongKing] & ~(1L << pieceSquare) & ~Bitboards.KING_ATTACKS[weakKing];
+		while (targets != 0) {
+			int target = Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			if (win[Bitbase.index(true, target, pieceSquare, weakKing)]) {
+				return true;
+			}
+		}
+
+		// Pawn moves: one or two steps forward, promoting on the last rank. The pawn has nothing to capture.
+		if (piece == ChessPiece.PAWN) {
+			long occupied = (1L << strongKing) | (1L << weakKing);
+			int step = pieceSquare + 8;
+			if ((occupied & (1L << step)) != 0) {
+				return false;
+			}
+			if (step >= 56) {
+				return tables[ChessPiece.QUEEN].isWin(Bitbase.index(true, strongKing, step, weakKing))
+						|| tables[ChessPiece.ROOK].isWin(Bitbase.index(true, strongKing, step, weakKing));
+			}
+			if (win[Bitbase.index(true, strongKing, step, weakKing)]) {
+				return true;
+			}
+			int doubleStep = step + 8;
+			return pieceSquare < 16 && (occupied & (1L << doubleStep)) == 0
+					&& win[Bitbase.index(true, strongKing, doubleStep, weakKing)];
+		}
+
+		// Queen or rook moves, which cannot take the king.
+		targets = pieceAttacks(pieceSquare, (1L << strongKing) | (1L << weakKing)) & ~(1L << strongKing)
+				& ~(1L << weakKing);
+		while (targets != 0) {
+			int target = Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			if (win[Bitbase.index(true, strongKing, target, weakKing)]) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Indicates whether the lone king, to move, is mated or can only move to positions already known to be won.
+	 */
+	private boolean isWeakLoss(int strongKing, int pieceSquare, int weakKing) {
+
+		// The lone king cannot step next to the other king nor onto a square the piece attacks, looking through the
+		// lone king's own square so that it cannot retreat along a line of attack.
+		long attacked = pieceAttacks(pieceSquare, (1L << strongKing) | (1L << pieceSquare));
+		long targets = Bitboards.KING_ATTACKS[weakKing] & ~Bitboards.KING_ATTACKS[strongKing] & ~attacked;
+
+		// Taking the undefended piece draws.
+		if ((targets & (1L << pieceSquare)) != 0) {
+			return false;
+		}
+
+		// Without a move, it is mate if in check and stalemate otherwise.
+		if (targets == 0) {
+			return (attacked & (1L << weakKing)) != 0;
+		}
+
+		while (targets != 0) {
+			int target = Long.numberOfTrailingZeros(targets);
+			targets &= targets - 1;
+			if (!win[Bitbase.index(false, strongKing, pieceSquare, target)]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Returns the squares the strong side's piece attacks from the specified square.
+	 *
+	 * @param pieceSquare the piece's bit index
+	 * @param occupied the squares that block a queen or rook
+	 */
+	private long pieceAttacks(int pieceSquare, long occupied) {
+		if (piece == ChessPiece.QUEEN) {
+			return Bitboards.queenAttacks(pieceSquare, occupied);
+		} else if (piece == ChessPiece.ROOK) {
+			return Bitboards.rookAttacks(pieceSquare, occupied);
+		}
+		return Bitboards.PAWN_ATTACKS[ChessGame.WHITE_PLAYER][pieceSquare];
+	}
+
+	/**
+	 * The strong side's piece: QUEEN, ROOK or PAWN.
+	 */
+	private final int piece;
+
+	/**
+	 * The bitbases already generated, indexed by piece value.
+	 */
+	private final Bitbase[] tables;
+
+	/**
+	 * Whether each position can arise in a game.
+	 */
+	private final boolean[] legal = new boolean[Bitbase.TABLE_SIZE];
+
+	/**
+	 * Whether each position is known to be won so far.
+	 */
+	private final boolean[] win = new boolean[Bitbase.TABLE_SIZE];
+
+	/**
+	 * The number of won positions found.
+	 */
+	private int nWins = 0;
+
+	/**
+	 * The number of passes made over the table.
+	 */
+	private int nPasses = 0;
+}
@@ -0,0 +1,245 @@
+package com.muro.ai.chess;
+
+/**
+ * Precomputed attack sets and helper routines for the 64-bit bitboard position kept by {@link ChessGame}.
+ *
+ * Bit 0 of a bitboard is a1, bit 7 is h1 and bit 63 is h8. Use {@link #toBitIndex(int)} and {@link #toSquare(int)}
+ * to translate between bit indices and squares on the 0x88 board.
+ */
+public final class Bitboards {
+
+	private Bitboards() {
+	}
+
+	/**
+	 * Converts an index into the 0x88 board to a bit index (0-63).
+	 *
+	 * @param square a valid index into the 0x88 board
+	 * @return an integer between 0 and 63
+	 */
+	public static int toBitIndex(int square) {
+		return (square + (square & 7)) >> 1;
+	}
+
+	/**
+	 * Converts a bit index (0-63) to an index into the 0x88 board.
+	 *
+	 * @param bitIndex an integer between 0 and 63
+	 * @return a valid index into the 0x88 board
+	 */
+	public static int toSquare(int bitIndex) {
+		return bitIndex + (bitIndex & ~7);
+	}
+
+	/**
+	 * Returns the squares attacked by a bishop on the specified square given the board occupancy.
+	 *
+	 * @param bitIndex the bishop's square
+	 * @param occupied every occupied square on the board
+	 * @return a bitboard of attacked squares, including the first blocker in each direction
+	 */
+	public static long bishopAttacks(int bitIndex, long occupied) {
+		return positiveRayAttacks(bitIndex, occupied, NORTH_EAST) | positiveRayAttacks(bitIndex, occupied, NORTH_WEST)
+				| negativeRayAttacks(bitIndex, occupied, SOUTH_EAST) | negativeRayAttacks(bitIndex, occupied, SOUTH_WEST);
+	}
+
+	/**
+	 * Returns the squares attacked by a rook on the specified square given the board occupancy.
+	 *
+	 * @param bitIndex the rook's square
+	 * @param occupied every occupied square on the board
+	 * @return a bitboard of attacked squares, including the first blocker in each direction
+	 */
+	public static long rookAttacks(int bitIndex, long occupied) {
+		return positiveRayAttacks(bitIndex, occupied, NORTH) | positiveRayAttacks(bitIndex, occupied, EAST)
+				| negativeRayAttacks(bitIndex, occupied, SOUTH) | negativeRayAttacks(bitIndex, occupied, WEST);
+	}
+
+	/**
+	 * Returns the squares attacked by a queen on the specified square given the board occupancy.
+	 *
+	 * @param bitIndex the queen's square
+	 * @param occupied every occupied square on the board
+	 * @return a bitboard of attacked squares, including the first blocker in each direction
+	 */
+	public static long queenAttacks(int bitIndex, long occupied) {
+		return bishopAttacks(bitIndex, occupied) | rookAttacks(bitIndex, occupied);
+	}
+
+	/**
+	 * Determines whether the specified square is attacked by any piece belonging to the specified player.
+	 *
+	 * @param aGame a ChessGame
+	 * @param bitIndex the square to test
+	 * @param player the attacking player
+	 * @return true if at least one of the player's pieces attacks the square
+	 */
+	public static boolean isSquareAttacked(ChessGame aGame, int bitIndex, int player) {
+		return isSquareAttacked(aGame, bitIndex, player, aGame.getOccupied());
+	}
+
+	/**
+	 * Determines whether the specified square is attacked by any piece belonging to the specified player, with sliding
+	 * pieces blocked only by the specified squares.
+	 *
+	 * @param aGame a ChessGame
+	 * @param bitIndex the square to test
+	 * @param player the attacking player
+	 * @param occupied the squares that block sliding pieces
+	 * @return true if at least one of the player's pieces attacks the square
+	 */
+	public static boolean isSquareAttacked(ChessGame aGame, int bitIndex, int player, long occupied) {
+		long[] attackers = aGame.pieceBitboards[player];
+
+		// A pawn attacks us if a pawn of ours on this square would attack it.
+		if ((PAWN_ATTACKS[player ^ 1][bitIndex] & attackers[ChessPiece.PAWN]) != 0) {
+			return true;
+		}
+		if ((KNIGHT_ATTACKS[bitIndex] & attackers[ChessPiece.KNIGHT]) != 0) {
+			return true;
+		}
+		if ((KING_ATTACKS[bitIndex] & attackers[ChessPiece.KING]) != 0) {
+			return true;
+		}
+		if ((bishopAttacks(bitIndex, occupied) & (attackers[ChessPiece.BISHOP] | attackers[ChessPiece.QUEEN])) != 0) {
+			return true;
+		}
+		return (rookAttacks(bitIndex, occupied) & (attackers[ChessPiece.ROOK] | attackers[ChessPiece.QUEEN])) != 0;
+	}
+
+	/**
+	 * Returns the attacks along a ray whose bit indices increase away from the origin.
+	 */
+	private static long positiveRayAttacks(int bitIndex, long occupied, int direction) {
+		long attacks = RAYS[direction][bitIndex];
+		long blockers = attacks & occupied;
+		if (blockers != 0) {
+			// Cut the ray off behind the nearest blocker.
+			attacks ^= RAYS[direction][Long.numberOfTrailingZeros(blockers)];
+		}
+		return attacks;
+	}
+
+	/**
+	 * Returns the attacks along a ray whose bit indices decrease away from the origin.
+	 */
+	private static long negativeRayAttacks(int bitIndex, long occupied, int direction) {
+		long attacks = RAYS[direction][bitIndex];
+		long blockers = attacks & occupied;
+		if (blockers != 0) {
+			// Cut the ray off behind the nearest blocker.
+			attacks ^= RAYS[direction][63 - Long.numberOfLeadingZeros(blockers)];
+		}
+		return attacks;
+	}
+
+	/**
+	 * Builds a bitboard of the squares reachable from the specified square by a single step of each delta.
+	 */
+	private static long stepAttacks(int square, int[] deltas) {
+		long attacks = 0L;
+		for (int delta : deltas) {
+			int target = square + delta;
+			if ((target & 0x88) == 0) {
+				attacks |= 1L << toBitIndex(target);
+			}
+		}
+		return attacks;
+	}
+
+	/**
+	 * Builds a bitboard of the squares along a ray (excluding the origin) until the edge of the board.
+	 */
+	private static long slideAttacks(int square, int delta) {
+		long attacks = 0L;
+		int target = square + delta;
+		while ((target & 0x88) == 0) {
+			attacks |= 1L << toBitIndex(target);
+			target += delta;
+		}
+		return attacks;
+	}
+
+	/**
+	 * Ray directions. The first four increase the bit index, the last four decrease it.
+	 */
+	private static final int NORTH = 0;
+	private static final int EAST = 1;
+	private static final int NORTH_EAST = 2;
+	private static final int NORTH_WEST = 3;
+	private static final int SOUTH = 4;
+	private static final int WEST = 5;
+	private static final int SOUTH_EAST = 6;
+	private static final int SOUTH_WEST = 7;
+
+	/**
+	 * The 0x88 deltas corresponding to each ray direction.
+	 */
+	private static final int[] RAY_DELTAS = {
+		16, 1, 17, 15, // north, east, north-east, north-west
+		-16, -1, -15, -17 // south, west, south-east, south-west
+	};
+
+	/**
+	 * The first rank (a1-h1).
+	 */
+	public static final long RANK_1 = 0x00000000000000FFL;
+
+	/**
+	 * The third rank, where a white pawn lands after a single step from its starting square.
+	 */
+	public static final long RANK_3 = 0x0000000000FF0000L;
+
+	/**
+	 * The sixth rank, where a black pawn lands after a single step from its starting square.
+	 */
+	public static final long RANK_6 = 0x0000FF0000000000L;
+
+	/**
+	 * The eighth rank (a8-h8).
+	 */
+	public static final long RANK_8 = 0xFF00000000000000L;
+
+	/**
+	 * The a-file.
+	 */
+	public static final long FILE_A = 0x0101010101010101L;
+
+	/**
+	 * The h-file.
+	 */
+	public static final long FILE_H = 0x8080808080808080L;
+
+	/**
+	 * The squares attacked by a knight on each square.
+	 */
+	public static final long[] KNIGHT_ATTACKS = new long[64];
+
+	/**
+	 * The squares attacked by a king on each square.
+	 */
+	public static final long[] KING_ATTACKS = new long[64];
+
+	/**
+	 * The squares attacked by a pawn of each player on each square.
+	 */
+	public static final long[][] PAWN_ATTACKS = new long[2][64];
+
+	/**
+	 * The squares along each ray direction from each square, up to the edge of the board.
+	 */
+	private static final long[][] RAYS = new long[8][64];
+
+	static {
+		for (int bitIndex = 0; bitIndex < 64; bitIndex+=1) {
+			int square = toSquare(bitIndex);
+			KNIGHT_ATTACKS[bitIndex] = stepAttacks(square, ChessSearch.WHITE_PIECE_DELTAS[ChessPiece.KNIGHT]);
+			KING_ATTACKS[bitIndex] = stepAttacks(square, ChessSearch.WHITE_PIECE_DELTAS[ChessPiece.KING]);
+			PAWN_ATTACKS[ChessGame.WHITE_PLAYER][bitIndex] = stepAttacks(square, new int[] {15, 17});
+			PAWN_ATTACKS[ChessGame.BLACK_PLAYER][bitIndex] = stepAttacks(square, new int[] {-15, -17});
+			for (int direction = 0; direction < RAY_DELTAS.length; direction+=1) {
+				RAYS[direction][bitIndex] = slideAttacks(square, RAY_DELTAS[direction]);
+			}
+		}
+	}
+}
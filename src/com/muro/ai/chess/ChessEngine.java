@@ -0,0 +1,232 @@
+package com.muro.ai.chess;
+
+import java.util.Random;
+
+/**
+ * A chess engine that lives for a whole game. Unlike ChessSearch.findNextMove, which starts from scratch every turn,
+ * the engine keeps its searches, and with them the transposition table and the killer and history tables, from one
+ * move to the next. Nothing is cleared between moves: transposition table entries from earlier searches are replaced
+ * first, history scores are halved, and killers follow the plies they were found at.
+ *
+ * The engine keeps its own copy of the position, which it brings up to date one move at a time as moves are played
+ * (see applyMove), and can ponder on the opponent's clock (see startPondering). While the position is in its opening
+ * book, if it has one, it can answer without searching at all (see findBookMove).
+ */
+public final class ChessEngine {
+
+	/**
+	 * Constructs an engine on the starting position.
+	 *
+	 * @param hashMegabytes the size of the transposition table
+	 * @param nThreads the total number of searching threads
+	 */
+	public ChessEngine(int hashMegabytes, int nThreads) {
+		position = new ChessGame();
+		position.initGame();
+		transpositionTable = new TranspositionTable(hashMegabytes);
+		theSearch = new ChessSearch(position, transpositionTable);
+		setThreads(nThreads);
+	}
+
+	/**
+	 * Sets the number of threads used to search. New helper searches start with empty killer and history tables.
+	 *
+	 * @param nThreads the total number of searching threads, including the calling thread (at least one)
+	 */
+	public void setThreads(int nThreads) {
+		stopPondering();
+		helpers = new ChessSearch[Math.max(nThreads - 1, 0)];
+		for (int i = 0; i < helpers.length; i+=1) {
+			helpers[i] = new ChessSearch(position, transpositionTable);
+		}
+	}
+
+	/**
+	 * Plays the specified move, made by either player, in the engine's position. If the move is the reply being
+	 * pondered, the ponder search keeps running; otherwise pondering stops.
+	 *
+	 * @param moveString a move in our modified algebraic notation (see ChessGame.performMove)
+	 * @return true if the move was performed
+	 */
+	public boolean applyMove(String moveString) {
+		if (!position.performMove(moveString)) {
+			return false;
+		}
+		lastMove = moveString;
+		if (bookSearch != null) {
+			bookSearch.getChessGame().performMove(moveString);
+		}
+
+		// After a ponder hit the searches are already on the new position.
+		if (ponderer != null && ponderer.isPonderHit(moveString)) {
+			ponderHit = true;
+			return true;
+		}
+		stopPondering();
+
+		theSearch.getChessGame().performMove(moveString);
+		for (ChessSearch helper : helpers) {
+			helper.getChessGame().performMove(moveString);
+		}
+		return true;
+	}
+
+	/**
+	 * Sets the opening book consulted by findBookMove.
+	 *
+	 * @param openingBook the book, or null to play without one
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		this.openingBook = openingBook;
+		bookSearch = (openingBook != null) ? new ChessSearch(position, transpositionTable) : null;
+	}
+
+	/**
+	 * Picks a move for the current position from the opening book, at random but weighted by how well each move has
+	 * done. No search is run, so a book move costs next to nothing off the clock.
+	 *
+	 * @return a packed move (see Move), or Move.NONE if there is no book or the position is not in it
+	 */
+	public int findBookMove() {
+		if (openingBook == null) {
+			return Move.NONE;
+		}
+
+		String bookMove = openingBook.pickMove(bookSearch, random);
+		if (bookMove == null) {
+			return Move.NONE;
+		}
+		return position.parseMove(bookMove);
+	}
+
+	/**
+	 * Searches for the best move in the current position. After a ponder hit, the ponder search is given the time
+	 * limit instead, counted from when pondering started.
+	 *
+	 * @param team the player to move
+	 * @param timeLimit the maximum duration of the search, in seconds
+	 * @return a packed move (see Move) specifying the best move
+	 */
+	public int findBestMove(int team, int timeLimit) {
+		if (ponderer != null && ponderHit) {
+			int bestMove = ponderer.finish(timeLimit);
+			ponderer = null;
+			ponderHit = false;
+			return bestMove;
+		}
+		stopPondering();
+
+		theSearch.startClock(timeLimit);
+		return ChessSearch.search(theSearch, helpers, team, timeLimit, ChessSearch.MAX_DEPTH);
+	}
+
+	/**
+	 * Starts searching on the opponent's clock, after the reply the last search expects, or else on the current
+	 * position. The expected reply comes from the principal variation if it starts with the last move played and is
+	 * long enough, and otherwise from the transposition table.
+	 *
+	 * @return the reply being pondered, or Move.NONE
+	 */
+	public int startPondering() {
+		stopPondering();
+
+		int[] line = theSearch.getPrincipalVariation();
+		int ponderMove;
+		if (line.length > 1 && Move.toString(line[0]).equals(lastMove)) {
+			ponderMove = line[1];
+		} else {
+			ponderMove = theSearch.getHashMove();
+		}
+
+		ponderer = new Ponderer(theSearch, helpers, ponderMove);
+		ponderHit = false;
+		ponderer.start();
+		return ponderMove;
+	}
+
+	/**
+	 * Cancels the ponder search, if any. Its results stay in the transposition table.
+	 */
+	public void stopPondering() {
+		if (ponderer != null) {
+
+			// After a ponder hit the pondered position is the real one, so it must not be taken back.
+			if (ponderHit) {
+				ponderer.stop();
+			} else {
+				ponderer.cancel();
+			}
+			ponderer = null;
+			ponderHit = false;
+		}
+	}
+
+	/**
+	 * Returns the principal variation found by the last search.
+	 *
+	 * @return the moves of the line, starting with the best move
+	 */
+	public int[] getPrincipalVariation() {
+		return theSearch.getPrincipalVariation();
+	}
+
+	/**
+	 * Returns the score of the principal variation found by the last search.
+	 *
+	 * @return the score, in centipawns, from the point of view of the player who was to move
+	 */
+	public int getScore() {
+		return theSearch.getPrincipalVariationScore();
+	}
+
+	/**
+	 * The engine's copy of the game.
+	 */
+	private final ChessGame position;
+
+	/**
+	 * The transposition table shared by the searches, kept for the whole game.
+	 */
+	private final TranspositionTable transpositionTable;
+
+	/**
+	 * The main search, kept for the whole game.
+	 */
+	private final ChessSearch theSearch;
+
+	/**
+	 * The Lazy SMP helper searches.
+	 */
+	private ChessSearch[] helpers;
+
+	/**
+	 * The last move played, in our modified algebraic notation, or null.
+	 */
+	private String lastMove = null;
+
+	/**
+	 * The search running on the opponent's clock, or null.
+	 */
+	private Ponderer ponderer = null;
+
+	/**
+	 * Whether the opponent played the move being pondered.
+	 */
+	private boolean ponderHit = false;
+
+	/**
+	 * The opening book, or null.
+	 */
+	private OpeningBook openingBook = null;
+
+	/**
+	 * The search that checks the book moves for legality, kept in step with the game but never run, or null without a
+	 * book.
+	 */
+	private ChessSearch bookSearch = null;
+
+	/**
+	 * Chooses between the book moves of a position.
+	 */
+	private final Random random = new Random();
+}
@@ -2,6 +2,7 @@ package com.muro.ai.chess;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
@@ -108,6 +109,8 @@ public class ChessGame {
 		initWhite(); // Initialize white's piece list.
 		initBlack(); // Initialize black's piece list.
 		initChessBoard(); // Place each piece on the board.
+		castlingRights = ALL_CASTLING_RIGHTS; // Nobody has moved yet.
+		hash = computeHash(); // Fold the castling rights into the hash.
 	}
 	
 
@@ -128,7 +131,7 @@ public class ChessGame {
 			this.whitePieces.add(pieceCopy);
 			// Place the piece on the new board.
 			if (!piece.isCaptured) {
-				this.theBoard[piece.location] = pieceCopy;
+				this.placePiece(pieceCopy, piece.location);
 			}
 		}
 
@@ -139,7 +142,7 @@ public class ChessGame {
 			this.blackPieces.add(pieceCopy);
 			// place the piece on the new board.
 			if (!piece.isCaptured) {
-				this.theBoard[piece.location] = pieceCopy;
+				this.placePiece(pieceCopy, piece.location);
 			}
 		}
 
@@ -155,6 +158,186 @@ public class ChessGame {
 			this.capturedPieces.addFirst(new ChessPiece(piece));
 		}
 
+		// copy the remaining position state and the stack used to undo it
+		this.sideToMove = toCopy.sideToMove;
+		this.castlingRights = toCopy.castlingRights;
+		this.enPassantSquare = toCopy.enPassantSquare;
+		this.halfmoveClock = toCopy.halfmoveClock;
+		this.ply = toCopy.ply;
+		this.gameHistory = toCopy.gameHistory;
+		this.castlingHistory = toCopy.castlingHistory.clone();
+		this.enPassantHistory = toCopy.enPassantHistory.clone();
+		this.halfmoveHistory = toCopy.halfmoveHistory.clone();
+		this.historyPly = toCopy.historyPly;
+		this.hash = computeHash();
+	}
+
+	/**
+	 * Constructs a new chess game restored from the specified snapshot. The new game shares the snapshot's (immutable)
+	 * game history but cannot undo moves made before the snapshot was taken.
+	 * 
+	 * @param snapshot a Snapshot taken by snapshot()
+	 */
+	public ChessGame(Snapshot snapshot) {
+		this();
+		restore(snapshot);
+	}
+
+	/**
+	 * Captures the current position in a compact, immutable snapshot. Taking a snapshot copies a fixed-size byte array
+	 * and shares the game history, so its cost does not depend on the length of the game.
+	 * 
+	 * @return a Snapshot of the current position
+	 */
+	public Snapshot snapshot() {
+		return new Snapshot(this);
+	}
+
+	/**
+	 * Replaces the state of this game with the position held by the specified snapshot, discarding the undo stack.
+	 * 
+	 * @param snapshot a Snapshot taken by snapshot()
+	 */
+	public void restore(Snapshot snapshot) {
+
+		// Start from an empty board.
+		clear();
+
+		// Recreate each piece from its square code and move count.
+		for (int square = 0; square < _0x88_BOARD_SIZE; square+=1) {
+			int code = snapshot.squares[square];
+			if (code != 0) {
+				ChessPiece aPiece = new ChessPiece((code - 1) & 7, square, (code - 1) >> 3);
+				aPiece.nMoves = snapshot.squares[MOVE_COUNT_OFFSET + square];
+				addPiece(aPiece);
+			}
+		}
+
+		// Restore the rest of the position.
+		sideToMove = snapshot.sideToMove;
+		castlingRights = snapshot.castlingRights;
+		enPassantSquare = snapshot.enPassantSquare;
+		halfmoveClock = snapshot.halfmoveClock;
+		ply = snapshot.ply;
+		gameHistory = snapshot.history;
+		historyPly = 0;
+		hash = snapshot.hash;
+
+		if (verifyIncrementalState) {
+			checkIncrementalState();
+		}
+	}
+
+	/**
+	 * Replaces the state of this game with the position described by the specified FEN (Forsyth-Edwards Notation)
+	 * string, discarding the move history and undo stack. The halfmove clock and fullmove number may be omitted.
+	 * 
+	 * @param fen a FEN string, e.g. "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1"
+	 * @throws IllegalArgumentException if the string is not a valid FEN position
+	 */
+	public void loadFen(String fen) {
+
+		String[] fields = fen.trim().split("\\s+");
+		if (fields.length < 4) {
+			throw new IllegalArgumentException("Incomplete FEN: " + fen);
+		}
+
+		// Start from an empty board.
+		clear();
+
+		// Place the pieces rank by rank, starting from the eighth.
+		int rank = 7;
+		int file = 0;
+		for (char symbol : fields[0].toCharArray()) {
+			if (symbol == '/') {
+				rank--;
+				file = 0;
+			} else if (symbol >= '1' && symbol <= '8') {
+				file += symbol - '0';
+			} else {
+				int value = String.valueOf(ChessPiece.PIECE_SYMBOLS).indexOf(Character.toUpperCase(symbol));
+				if (value < 0 || rank < 0 || file > 7) {
+					throw new IllegalArgumentException("Invalid piece placement in FEN: " + fen);
+				}
+				int owner = Character.isUpperCase(symbol) ? WHITE_PLAYER : BLACK_PLAYER;
+				addPiece(new ChessPiece(value, rank * 16 + file, owner));
+				file++;
+			}
+		}
+
+		// Side to move.
+		sideToMove = fields[1].equals("b") ? BLACK_PLAYER : WHITE_PLAYER;
+
+		// Castling rights ("-" for none).
+		castlingRights = 0;
+		for (char right : fields[2].toCharArray()) {
+			switch (right) {
+			case 'K':
+				castlingRights |= WHITE_KINGSIDE_CASTLING;
+				break;
+			case 'Q':
+				castlingRights |= WHITE_QUEENSIDE_CASTLING;
+				break;
+			case 'k':
+				castlingRights |= BLACK_KINGSIDE_CASTLING;
+				break;
+			case 'q':
+				castlingRights |= BLACK_QUEENSIDE_CASTLING;
+				break;
+			}
+		}
+
+		// En passant square ("-" for none).
+		enPassantSquare = fields[3].equals("-") ? NO_SQUARE : convertToIndex(fields[3]);
+
+		// Fifty-move counter and fullmove number, which start at 0 and 1.
+		try {
+			halfmoveClock = (fields.length > 4) ? Integer.parseInt(fields[4]) : 0;
+			int fullmoves = (fields.length > 5) ? Integer.parseInt(fields[5]) : 1;
+			ply = 2 * (Math.max(fullmoves, 1) - 1) + sideToMove;
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid move counters in FEN: " + fen, e);
+		}
+
+		gameHistory = null;
+		historyPly = 0;
+		hash = computeHash();
+
+		if (verifyIncrementalState) {
+			checkIncrementalState();
+		}
+	}
+
+	/**
+	 * Adds a new piece to its owner's piece list and places it on its square.
+	 */
+	private void addPiece(ChessPiece aPiece) {
+		if (aPiece.owner == WHITE_PLAYER) {
+			whitePieces.add(aPiece);
+		} else {
+			blackPieces.add(aPiece);
+		}
+		placePiece(aPiece, aPiece.location);
+	}
+
+	/**
+	 * Removes every piece from the board and clears the piece lists and move history.
+	 */
+	private void clear() {
+		Arrays.fill(theBoard, null);
+		Arrays.fill(squares, (byte) 0);
+		Arrays.fill(pieceBitboards[WHITE_PLAYER], 0L);
+		Arrays.fill(pieceBitboards[BLACK_PLAYER], 0L);
+		Arrays.fill(colourBitboards, 0L);
+		Arrays.fill(pieceCounts[WHITE_PLAYER], 0);
+		Arrays.fill(pieceCounts[BLACK_PLAYER], 0);
+		Arrays.fill(midgameScore, 0);
+		Arrays.fill(endgameScore, 0);
+		phase = 0;
+		whitePieces.clear();
+		blackPieces.clear();
+		moveHistory.clear();
+		capturedPieces.clear();
 	}
 
 	/**
@@ -169,42 +352,110 @@ public class ChessGame {
 	 *		4. ending file {a, b, c, d, e, f, g, h}
 	 *		5. ending rank {1, 2, 3, 4, 5, 6, 7, 8}
 	 *
+	 * Pawn promotions append a sixth character naming the new piece {Q, R, B, N}.
+	 *
 	 * @param moveString a String representing a move in our modified algebraic notation.
 	 * @return indicates whether the move was performed or not
 	 * 
 	 */
 	public boolean performMove(String moveString) {
 
-		// Translate the destination square from algebraic notation to a valid 0x88 index.
+		// Translate the move string into a packed move against the current board.
+		int move = parseMove(moveString);
+
+		// Indicates whether the move was valid.
+		boolean result = false;
+
+		// If there is a piece at the source than perform the move.
+		if (move != Move.NONE) {
+			ChessMove aMove = new ChessMove(theBoard[Move.from(move)], Move.from(move), Move.to(move),
+					Move.isCapture(move), Move.isPromotion(move));
+			aMove.promotion = Move.promotion(move);
+			aMove.encoded = move;
+			long priorHash = hash;
+			doMove(move);
+			// Add the move to our history stack.
+			moveHistory.addFirst(aMove);
+			gameHistory = new GameHistory(move, priorHash, gameHistory);
+			// Indicate success.
+			result = true;
+		}
+
+		return result;
+	}
+
+	/**
+	 * Translates the specified move string (see performMove) into a packed move against the current board.
+	 * 
+	 * @param moveString a String representing a move in our modified algebraic notation.
+	 * @return a packed move, or Move.NONE if either square is off the board or there is no piece to move
+	 */
+	public int parseMove(String moveString) {
+
+		// Translate the source square from algebraic notation to a valid 0x88 index.
 		int source = ChessGame.convertToIndex(moveString.substring(1, 3));
 
 		// Translate the destination square from algebraic notation to a valid 0x88 index.
 		int target = ChessGame.convertToIndex(moveString.substring(3, 5));
 
-		// Determine if this move involves a pawn promotion.
-		boolean isPromotion = ChessGame.isPromotion(moveString);
+		// Verify that both the source and target squares are on the board and that there is a piece to move.
+		if (((source & 0x88) != 0) || ((target & 0x88) != 0) || theBoard[source] == null) {
+			return Move.NONE;
+		}
 
-		// Indicates whether the move was valid.
-		boolean result = false;
+		// Pawns are promoted to a queen unless the move string names another piece.
+		int promotion = ChessPiece.QUEEN;
+		if (ChessGame.isPromotion(moveString)) {
+			promotion = convertToPieceValue(moveString.charAt(5));
+		}
+
+		return createMove(source, target, promotion);
+	}
+
+	/**
+	 * Creates a packed move of the piece on the source square to the target square, filling in the captured piece
+	 * and the special move flags from the current board.
+	 * 
+	 * @param source the starting square, which must hold a piece
+	 * @param target the ending square
+	 * @param promotion the piece a pawn reaching the last rank is promoted to
+	 * @return a packed move
+	 */
+	public int createMove(int source, int target, int promotion) {
 
-		// Verify that both the source and target squares are on the board.
-		if (((source & 0x88) == 0) && ((target & 0x88) == 0)) {
+		ChessPiece aPiece = theBoard[source];
+		ChessPiece toCapture = theBoard[target];
 
-			// Get the piece at the source square.
-			ChessPiece aPiece = theBoard[source];
+		int flags = 0;
+		int captured = 0;
 
-			// If there is a piece at the source than perform the move.
-			if (aPiece != null) {
-				ChessMove aMove = new ChessMove(aPiece, source, target, false, isPromotion);
-				doMove(aMove);
-				// Add the move to our history stack.
-				moveHistory.addFirst(aMove);
-				// Indicate success.
-				result = true;
+		// Check if there is an enemy piece on the target square.
+		if (toCapture != null && toCapture.owner != aPiece.owner) {
+			flags |= Move.CAPTURE;
+			captured = toCapture.value;
+		}
+
+		if (aPiece.value == ChessPiece.PAWN) {
+			if (target == enPassantSquare && toCapture == null && (source & 0x07) != (target & 0x07)) {
+				// A diagonal step onto the en passant square captures the pawn that just double-stepped.
+				flags |= Move.CAPTURE | Move.EN_PASSANT;
+				captured = ChessPiece.PAWN;
+			} else if (Math.abs(target - source) == 32) {
+				flags |= Move.DOUBLE_PUSH;
+			}
+			// A pawn reaching the first or last rank is promoted.
+			if ((target & 0x70) == 0 || (target & 0x70) == 0x70) {
+				flags |= Move.PROMOTION;
 			}
+		} else if (aPiece.value == ChessPiece.KING && Math.abs(target - source) == 2) {
+			flags |= Move.CASTLING;
 		}
 
-		return result;
+		if ((flags & Move.PROMOTION) == 0) {
+			promotion = 0;
+		}
+
+		return Move.create(source, target, aPiece.value, captured, promotion, flags);
 	}
 
 	/**
@@ -214,60 +465,165 @@ public class ChessGame {
 	 */
 	protected void doMove(ChessMove aMove) {
 
-		// Pawn moves require a separate method to handle attacks, en passant, and promotion.
-		if (aMove.piece.value == ChessPiece.PAWN) {
-			doPawnMove(aMove);
+		// Encode the move against the current board and perform it.
+		aMove.encoded = createMove(aMove.source, aMove.target, aMove.promotion);
+		aMove.isCapture = Move.isCapture(aMove.encoded);
+		doMove(aMove.encoded);
+	}
+
+	/**
+	 * Performs the specified packed move. The move must have been created against the current board (see
+	 * createMove), since its flags decide how captures, en passant and promotions are carried out.
+	 * 
+	 * @param move a packed move
+	 */
+	protected void doMove(int move) {
+
+		// Remember the state that cannot be recovered from the move itself.
+		pushState();
+
+		int source = Move.from(move);
+		int target = Move.to(move);
+		ChessPiece aPiece = theBoard[source];
+
+		// Update the piece information
+		aPiece.nMoves++;
+
+		// Pawn moves and captures reset the fifty-move counter.
+		if (Move.piece(move) == ChessPiece.PAWN || Move.isCapture(move)) {
+			halfmoveClock = 0;
 		} else {
+			halfmoveClock++;
+		}
 
-			// Is there a piece at the destination square?
-			ChessPiece toCapture = theBoard[aMove.target];
+		// Pawn moves require a separate method to handle attacks, en passant, and promotion.
+		if (Move.piece(move) == ChessPiece.PAWN) {
+			doPawnMove(move, aPiece);
+		} else {
 
-			// Check if the piece belong to our opponent.
-			if (toCapture != null && aMove.piece.owner != toCapture.owner) {
-				toCapture.isCaptured = true;
-				aMove.isCapture = true;
-				capturedPieces.addFirst(toCapture);
+			// Remove the enemy piece at the destination square.
+			if (Move.isCapture(move)) {
+				capturePiece(target);
 			}
 
 			// Update the board.
-			theBoard[aMove.target] = aMove.piece;
-			theBoard[aMove.source] = null;
+			removePiece(source);
+			placePiece(aPiece, target);
+
+			// Castling also moves the rook over the king.
+			if (Move.isCastling(move)) {
+				moveCastlingRook(source, target, true);
+			}
+		}
 
-			// Update the piece information
-			aMove.piece.nMoves++;
-			aMove.piece.location = aMove.target;
+		// Moving a king or rook, or capturing a rook, forfeits the corresponding castling rights.
+		setCastlingRights(castlingRights & CASTLING_MASKS[source] & CASTLING_MASKS[target]);
+
+		// A double-step pawn move leaves behind a square that may be captured en passant on the next turn.
+		if (Move.isDoublePush(move)) {
+			setEnPassantSquare((source + target) / 2);
+		} else {
+			setEnPassantSquare(NO_SQUARE);
+		}
+
+		// Pass the turn to the other player.
+		sideToMove ^= 1;
+		hash ^= Zobrist.SIDE_KEY;
+		ply++;
+
+		if (verifyIncrementalState) {
+			checkIncrementalState();
 		}
 	}
 
+	/**
+	 * Reverts the specified chess move, which must be the last move performed.
+	 * 
+	 * @param toUndo a ChessMove
+	 */
 	protected void undoMove(ChessMove toUndo) {
+		undoMove(toUndo.encoded);
+	}
+
+	/**
+	 * Reverts the specified packed move, which must be the last move performed.
+	 * 
+	 * @param move a packed move
+	 */
+	protected void undoMove(int move) {
+
+		int source = Move.from(move);
+		int target = Move.to(move);
+
+		// Put the castling rook back in its corner first.
+		if (Move.isCastling(move)) {
+			moveCastlingRook(source, target, false);
+		}
+
+		// Take the piece off its destination square.
+		ChessPiece aPiece = theBoard[target];
+		removePiece(target);
+
+		// Did the prior move result in a promotion?
+		if (Move.isPromotion(move)) {
+			// Demote the piece back to a pawn.
+			aPiece.value = ChessPiece.PAWN;
+		}
 
-		// Where did the piece come from?
-		int origin = toUndo.source;
 		// Put the piece back in it's original position on the board.
-		theBoard[origin] = toUndo.piece;
-		toUndo.piece.nMoves--;
-		// Update the board accordingly.
-		theBoard[toUndo.target] = null;
-		// Update the piece data.
-		toUndo.piece.location = origin;
+		aPiece.nMoves--;
+		placePiece(aPiece, source);
 
 		// Did the prior move result in a capture?
-		if (toUndo.isCapture) {
+		if (Move.isCapture(move)) {
 			// Get the piece that was captured.
 			ChessPiece captured = capturedPieces.removeFirst();
 			// Revert it back to its prior state.
 			captured.isCaptured = false;
 			// Place it back on the board.
-			theBoard[captured.location] = captured;
+			placePiece(captured, captured.location);
 		}
 
-		// Did the prior move result in a promotion?
-		if (toUndo.isPromotion) {
-			// Demote the piece back to a pawn.
-			toUndo.piece.value = ChessPiece.PAWN;
+		// Restore the castling rights, en passant square, fifty-move counter and side to move.
+		popState();
+		sideToMove ^= 1;
+		hash ^= Zobrist.SIDE_KEY;
+		ply--;
+
+		if (verifyIncrementalState) {
+			checkIncrementalState();
 		}
+	}
+
+	/**
+	 * Passes the turn to the other player without moving a piece. Only the search uses this, to ask whether the
+	 * position is so good that the opponent could not catch up even with a free move.
+	 */
+	protected void doNullMove() {
+
+		// Remember the state that cannot be recovered, as for a real move.
+		pushState();
 
+		// Passing gives up any en passant capture and counts towards the fifty-move rule.
+		halfmoveClock++;
+		setEnPassantSquare(NO_SQUARE);
 
+		// Pass the turn to the other player.
+		sideToMove ^= 1;
+		hash ^= Zobrist.SIDE_KEY;
+		ply++;
+	}
+
+	/**
+	 * Reverts the null move performed by the matching call to doNullMove.
+	 */
+	protected void undoNullMove() {
+
+		// Restore the en passant square and fifty-move counter, and give the turn back.
+		popState();
+		sideToMove ^= 1;
+		hash ^= Zobrist.SIDE_KEY;
+		ply--;
 	}
 
 	/**
@@ -277,120 +633,97 @@ public class ChessGame {
 	 */
 	public boolean undoLastMove() {
 
-		ChessMove toUndo = moveHistory.removeFirst();
+		ChessMove toUndo = moveHistory.pollFirst();
 
 		if (toUndo != null) {
-
-			// Where did the piece come from?
-			int origin = toUndo.source;
-			// Put the piece back in it's original position on the board.
-			theBoard[origin] = toUndo.piece;
-			toUndo.piece.nMoves--;
-			// Update the board accordingly.
-			theBoard[toUndo.target] = null;
-			// Update the piece data.
-			toUndo.piece.location = origin;
-
-			// Did the prior move result in a capture?
-			if (toUndo.isCapture) {
-				// Get the piece that was captured.
-				ChessPiece captured = capturedPieces.removeFirst();
-				// Revert it back to its prior state.
-				captured.isCaptured = false;
-				// Place it back on the board.
-				theBoard[captured.location] = captured;
-			}
-
-			// Did the prior move result in a promotion?
-			if (toUndo.isPromotion) {
-				// Demote the piece back to a pawn.
-				toUndo.piece.value = ChessPiece.PAWN;
-			}
+			undoMove(toUndo);
+			gameHistory = gameHistory.previous;
 		}
 
 		return true;
 	}
 
-	private void doPawnMove(ChessMove aMove) {
+	private void doPawnMove(int move, ChessPiece aPawn) {
 
-		// Determine if this is an attack move by checking if the source and target file differ.
-		if ((aMove.source %  16) != (aMove.target % 16)) {
+		// Determine if this is an attack move.
+		if (Move.isCapture(move)) {
 			// Determine if this is an en passant attack.
-			if (!doEnpassant(aMove)) {
-				// Is there a piece at the destination square?
-				ChessPiece toCapture = theBoard[aMove.target];
-				// Check if the piece belong to our opponent.
-				if (toCapture != null && aMove.piece.owner != toCapture.owner) {
-					toCapture.isCaptured = true;
-					aMove.isCapture = true;
-					capturedPieces.addFirst(toCapture);
-				}
+			if (!doEnpassant(move)) {
+				// Remove the enemy piece at the destination square.
+				capturePiece(Move.to(move));
 			}
 		}
 
 		// Update the board.
-		theBoard[aMove.target] = aMove.piece;
-		theBoard[aMove.source] = null;
-
-		// Update the piece information
-		aMove.piece.nMoves++;
-		aMove.piece.location = aMove.target;
+		removePiece(Move.from(move));
 
 		// Check if this is a promotion.
-		if (aMove.isPromotion) {
-			// Default the promotion to a queen.
-			aMove.piece.value = ChessPiece.QUEEN;
+		if (Move.isPromotion(move)) {
+			aPawn.value = Move.promotion(move);
 		}
+
+		placePiece(aPawn, Move.to(move));
 	}
 
 	/**
-	 * Determines whether the specified move is an en passant attack and, if so, performs the move.
+	 * Determines whether the specified move is an en passant attack and, if so, removes the captured pawn.
 	 * 
-	 * @param aMove a ChessMove
+	 * @param move a packed move
 	 * @return true if the move was determined to be an en passant attack and false otherwise.
 	 */
-	private boolean doEnpassant(ChessMove aMove) {
+	private boolean doEnpassant(int move) {
 
 		boolean result = false;
 
-		// the starting rank of the attacking piece
-		int startRank = aMove.source / 16;
-
-		// the ending rank and file of the attacking piece
-		int endRank = aMove.target / 16;
-		int endFile = aMove.target % 16;
+		if (Move.isEnPassant(move)) {
+			// The captured pawn stands beside the attacker, on the attacker's starting rank.
+			capturePiece((Move.from(move) & 0x70) | (Move.to(move) & 0x07));
+			result = true;
+		}
 
-		// Determine if this is en passant attack by checking if the pawn is on its fifth rank.
-		if ( ((startRank == 3) && (endRank == 2)) || // black en passant 
-				((startRank == 4) && (endRank == 5))) { // white en passant
+		return result;
+	}
 
-			// Determine if there is an enemy pawn on the adjacent file
-			int adjacentIndex = (startRank * 16) + endFile;
-			ChessPiece adjacentPiece = theBoard[adjacentIndex];
+	/**
+	 * Moves the rook that accompanies a castling king between its corner and the square the king passed over.
+	 * 
+	 * @param source the king's starting square
+	 * @param target the king's ending square
+	 * @param forward true when castling and false when reverting a castling move
+	 */
+	private void moveCastlingRook(int source, int target, boolean forward) {
 
-			if (adjacentPiece != null && 
-					adjacentPiece.value == ChessPiece.PAWN && 
-					adjacentPiece.owner != aMove.piece.owner) {
+		// Kingside the rook starts three files from the king, queenside four.
+		int corner = (target > source) ? source + 3 : source - 4;
+		int passed = (source + target) / 2;
 
-				ChessMove priorMove = moveHistory.peekFirst();
+		int from = forward ? corner : passed;
+		int to = forward ? passed : corner;
 
-				// Determine if the move turn immediately before ours was a double-step move
-				if (priorMove.piece.value == ChessPiece.PAWN) {
+		ChessPiece aRook = theBoard[from];
+		removePiece(from);
 
-					int priorRankStart = priorMove.source / 16;
-					int priorRankEnd = priorMove.target / 16;
+		// Keep the rook's move count in step with the king's.
+		if (forward) {
+			aRook.nMoves++;
+		} else {
+			aRook.nMoves--;
+		}
 
-					if (Math.abs(priorRankEnd - priorRankStart) == 2) {
-						adjacentPiece.isCaptured = true;
-						theBoard[adjacentIndex] = null;
-						capturedPieces.addFirst(adjacentPiece);
-						aMove.isCapture = true;
-					}
-				} // End double-step check
-			} // End adjacency check
-		} // End en passant check
+		placePiece(aRook, to);
+	}
 
-		return result;
+	/**
+	 * Marks the piece on the specified square as captured, pushes it onto the captured pieces stack and removes it
+	 * from the board.
+	 * 
+	 * @param square an index into the 0x88 board
+	 */
+	private void capturePiece(int square) {
+		ChessPiece toCapture = theBoard[square];
+		toCapture.isCaptured = true;
+		capturedPieces.addFirst(toCapture);
+		removePiece(square);
 	}
 
 	/**
@@ -450,14 +783,235 @@ public class ChessGame {
 	private void initChessBoard() {
 		// Place white's pieces on the board.
 		for (ChessPiece aPiece : whitePieces) {
-			theBoard[aPiece.location] = aPiece;
+			placePiece(aPiece, aPiece.location);
 		}
 		// Place black's pieces on the board.
 		for (ChessPiece aPiece : blackPieces) {
-			theBoard[aPiece.location] = aPiece;
+			placePiece(aPiece, aPiece.location);
+		}
+	}
+
+	/**
+	 * Places the specified piece on the specified square and updates the bitboards accordingly. The square must be empty.
+	 * 
+	 * @param aPiece a ChessPiece
+	 * @param square an index into the 0x88 board
+	 */
+	protected void placePiece(ChessPiece aPiece, int square) {
+		long bit = 1L << Bitboards.toBitIndex(square);
+		theBoard[square] = aPiece;
+		squares[square] = (byte) (1 + aPiece.value + (aPiece.owner << 3));
+		squares[MOVE_COUNT_OFFSET + square] = (byte) Math.min(aPiece.nMoves, Byte.MAX_VALUE);
+		aPiece.location = square;
+		pieceBitboards[aPiece.owner][aPiece.value] |= bit;
+		colourBitboards[aPiece.owner] |= bit;
+		hash ^= Zobrist.pieceKey(aPiece.owner, aPiece.value, square);
+		int slot = pieceCounts[aPiece.owner][aPiece.value]++;
+		pieceSquares[aPiece.owner][aPiece.value][slot] = square;
+		squareSlots[square] = slot;
+		midgameScore[aPiece.owner] += ChessSearch.MIDGAME_PIECE_SQUARE[aPiece.owner][aPiece.value][square];
+		endgameScore[aPiece.owner] += ChessSearch.ENDGAME_PIECE_SQUARE[aPiece.owner][aPiece.value][square];
+		phase += ChessSearch.PHASE_WEIGHTS[aPiece.value];
+	}
+
+	/**
+	 * Removes the piece (if any) on the specified square and updates the bitboards accordingly. The piece keeps its
+	 * location so that it can be restored later.
+	 * 
+	 * @param square an index into the 0x88 board
+	 */
+	protected void removePiece(int square) {
+		ChessPiece aPiece = theBoard[square];
+		if (aPiece != null) {
+			long bit = 1L << Bitboards.toBitIndex(square);
+			theBoard[square] = null;
+			squares[square] = 0;
+			squares[MOVE_COUNT_OFFSET + square] = 0;
+			pieceBitboards[aPiece.owner][aPiece.value] &= ~bit;
+			colourBitboards[aPiece.owner] &= ~bit;
+			hash ^= Zobrist.pieceKey(aPiece.owner, aPiece.value, square);
+			// Move the last piece of this type into the vacated slot.
+			int[] squaresOfType = pieceSquares[aPiece.owner][aPiece.value];
+			int last = --pieceCounts[aPiece.owner][aPiece.value];
+			int slot = squareSlots[square];
+			squaresOfType[slot] = squaresOfType[last];
+			squareSlots[squaresOfType[slot]] = slot;
+			midgameScore[aPiece.owner] -= ChessSearch.MIDGAME_PIECE_SQUARE[aPiece.owner][aPiece.value][square];
+			endgameScore[aPiece.owner] -= ChessSearch.ENDGAME_PIECE_SQUARE[aPiece.owner][aPiece.value][square];
+			phase -= ChessSearch.PHASE_WEIGHTS[aPiece.value];
 		}
 	}
 
+	/**
+	 * Returns the Zobrist hash of the current position. The hash is maintained incrementally by every move and undo.
+	 * 
+	 * @return a 64-bit key identifying the position
+	 */
+	public long getHash() {
+		return hash;
+	}
+
+	/**
+	 * Returns the moves performed with performMove, most recent first. The history is immutable and shared with every
+	 * snapshot taken from this game.
+	 * 
+	 * @return the most recent GameHistory entry, or null if no moves have been performed
+	 */
+	public GameHistory getHistory() {
+		return gameHistory;
+	}
+
+	/**
+	 * Returns the number of moves made since the last pawn move or capture.
+	 * 
+	 * @return the fifty-move counter
+	 */
+	public int getHalfmoveClock() {
+		return halfmoveClock;
+	}
+
+	/**
+	 * Returns the player whose turn it is.
+	 * 
+	 * @return WHITE_PLAYER or BLACK_PLAYER
+	 */
+	public int getSideToMove() {
+		return sideToMove;
+	}
+
+	/**
+	 * Returns the number of moves made since the start of the game, including moves still being searched.
+	 * 
+	 * @return the number of half-moves played
+	 */
+	public int getPly() {
+		return ply;
+	}
+
+	/**
+	 * Sets the player whose turn it is, keeping the hash up to date.
+	 * 
+	 * @param player WHITE_PLAYER or BLACK_PLAYER
+	 */
+	public void setSideToMove(int player) {
+		if (player != sideToMove) {
+			sideToMove = player;
+			hash ^= Zobrist.SIDE_KEY;
+		}
+	}
+
+	/**
+	 * Computes the Zobrist hash of the current position from scratch by walking the board.
+	 * 
+	 * @return a 64-bit key identifying the position
+	 */
+	public long computeHash() {
+		long key = 0L;
+		for (int square = 0; square < _0x88_BOARD_SIZE; square+=1) {
+			ChessPiece aPiece = theBoard[square];
+			if (aPiece != null) {
+				key ^= Zobrist.pieceKey(aPiece.owner, aPiece.value, square);
+			}
+		}
+		key ^= Zobrist.castlingKey(castlingRights);
+		key ^= Zobrist.enPassantKey(enPassantSquare);
+		if (sideToMove == BLACK_PLAYER) {
+			key ^= Zobrist.SIDE_KEY;
+		}
+		return key;
+	}
+
+	/**
+	 * Verifies that the incrementally maintained hash and evaluation terms match ones computed from scratch.
+	 */
+	private void checkIncrementalState() {
+		long expected = computeHash();
+		if (hash != expected) {
+			throw new IllegalStateException("Incremental hash " + Long.toHexString(hash)
+					+ " does not match recomputed hash " + Long.toHexString(expected) + "\n" + this);
+		}
+
+		int[] midgame = new int[2];
+		int[] endgame = new int[2];
+		int expectedPhase = 0;
+		for (int square = 0; square < _0x88_BOARD_SIZE; square+=1) {
+			ChessPiece aPiece = theBoard[square];
+			if (aPiece != null) {
+				midgame[aPiece.owner] += ChessSearch.MIDGAME_PIECE_SQUARE[aPiece.owner][aPiece.value][square];
+				endgame[aPiece.owner] += ChessSearch.ENDGAME_PIECE_SQUARE[aPiece.owner][aPiece.value][square];
+				expectedPhase += ChessSearch.PHASE_WEIGHTS[aPiece.value];
+			}
+		}
+		if (!Arrays.equals(midgame, midgameScore) || !Arrays.equals(endgame, endgameScore) || phase != expectedPhase) {
+			throw new IllegalStateException("Incremental evaluation terms do not match the board\n" + this);
+		}
+	}
+
+	/**
+	 * Replaces the castling rights, keeping the hash up to date.
+	 */
+	private void setCastlingRights(int rights) {
+		hash ^= Zobrist.castlingKey(castlingRights) ^ Zobrist.castlingKey(rights);
+		castlingRights = rights;
+	}
+
+	/**
+	 * Replaces the en passant square, keeping the hash up to date.
+	 */
+	private void setEnPassantSquare(int square) {
+		hash ^= Zobrist.enPassantKey(enPassantSquare) ^ Zobrist.enPassantKey(square);
+		enPassantSquare = square;
+	}
+
+	/**
+	 * Saves the castling rights, en passant square and fifty-move counter before a move is performed.
+	 */
+	private void pushState() {
+		if (historyPly == castlingHistory.length) {
+			castlingHistory = Arrays.copyOf(castlingHistory, 2 * historyPly);
+			enPassantHistory = Arrays.copyOf(enPassantHistory, 2 * historyPly);
+			halfmoveHistory = Arrays.copyOf(halfmoveHistory, 2 * historyPly);
+		}
+		castlingHistory[historyPly] = castlingRights;
+		enPassantHistory[historyPly] = enPassantSquare;
+		halfmoveHistory[historyPly] = halfmoveClock;
+		historyPly++;
+	}
+
+	/**
+	 * Restores the castling rights, en passant square and fifty-move counter saved by the matching call to pushState.
+	 */
+	private void popState() {
+		historyPly--;
+		halfmoveClock = halfmoveHistory[historyPly];
+		setCastlingRights(castlingHistory[historyPly]);
+		setEnPassantSquare(enPassantHistory[historyPly]);
+	}
+
+	/**
+	 * Returns the number of pieces (including the king) the specified player has on the board.
+	 * 
+	 * @param owner WHITE_PLAYER or BLACK_PLAYER
+	 * @return the number of pieces
+	 */
+	public int countPieces(int owner) {
+		int[] counts = pieceCounts[owner];
+		int total = 0;
+		for (int value = 0; value < counts.length; value+=1) {
+			total += counts[value];
+		}
+		return total;
+	}
+
+	/**
+	 * Returns a bitboard of every occupied square.
+	 * 
+	 * @return a 64-bit occupancy mask
+	 */
+	protected long getOccupied() {
+		return colourBitboards[WHITE_PLAYER] | colourBitboards[BLACK_PLAYER];
+	}
+
 	/**
 	 * Converts the square specified in algebraic notation into an index into our 0x88 board.
 	 * 
@@ -475,6 +1029,21 @@ public class ChessGame {
 		return index;
 	}
 
+	/**
+	 * Converts a piece symbol (i.e., P, N, K, B, R, Q) to a piece value.
+	 * 
+	 * @param symbol a piece symbol
+	 * @return a piece value, or a queen if the symbol is not recognized
+	 */
+	private static int convertToPieceValue(char symbol) {
+		for (int value = 0; value < ChessPiece.PIECE_SYMBOLS.length; value+=1) {
+			if (ChessPiece.PIECE_SYMBOLS[value] == Character.toUpperCase(symbol)) {
+				return value;
+			}
+		}
+		return ChessPiece.QUEEN;
+	}
+
 	/**
 	 * Indicates whether the specified move results in a pawn promotion.
 	 * 
@@ -492,12 +1061,125 @@ public class ChessGame {
 	protected ChessPiece[] theBoard;
 
 	/**
-	 * Contains the pieces belonging to white that have not been captured.
+	 * The squares occupied by each type of piece, indexed by owner and then by piece value. Kept in sync with
+	 * theBoard by placePiece and removePiece.
+	 */
+	protected long[][] pieceBitboards = new long[2][ChessPiece.PIECE_SYMBOLS.length];
+
+	/**
+	 * The squares occupied by each player's pieces, indexed by owner.
+	 */
+	protected long[] colourBitboards = new long[2];
+
+	/**
+	 * The squares occupied by each type of piece, indexed by owner and then by piece value. Only the first
+	 * pieceCounts[owner][value] entries of each list are in use; the order is unspecified. Kept in sync by placePiece
+	 * and removePiece, which removes a piece by moving the last entry into its slot.
+	 */
+	protected int[][][] pieceSquares = new int[2][ChessPiece.PIECE_SYMBOLS.length][MAX_PIECES_PER_TYPE];
+
+	/**
+	 * The number of pieces of each type on the board, indexed by owner and then by piece value.
+	 */
+	protected int[][] pieceCounts = new int[2][ChessPiece.PIECE_SYMBOLS.length];
+
+	/**
+	 * For each occupied square, the slot in pieceSquares that holds it.
+	 */
+	private int[] squareSlots = new int[_0x88_BOARD_SIZE];
+
+	/**
+	 * The material plus piece-square score of each player's pieces using the middlegame tables, indexed by owner.
+	 * Kept in sync by placePiece and removePiece.
+	 */
+	protected int[] midgameScore = new int[2];
+
+	/**
+	 * The material plus piece-square score of each player's pieces using the endgame tables, indexed by owner.
+	 */
+	protected int[] endgameScore = new int[2];
+
+	/**
+	 * The sum of ChessSearch.PHASE_WEIGHTS over every piece on the board; ChessSearch.TOTAL_PHASE in the opening and
+	 * zero once only kings and pawns remain.
+	 */
+	protected int phase = 0;
+
+	/**
+	 * The player whose turn it is.
+	 */
+	protected int sideToMove = WHITE_PLAYER;
+
+	/**
+	 * The castling rights still available, a combination of the *_CASTLING flags.
+	 */
+	protected int castlingRights = 0;
+
+	/**
+	 * The square skipped by the previous double-step pawn move, or NO_SQUARE.
+	 */
+	protected int enPassantSquare = NO_SQUARE;
+
+	/**
+	 * The number of moves made since the last pawn move or capture.
+	 */
+	protected int halfmoveClock = 0;
+
+	/**
+	 * The number of moves made since the start of the game.
+	 */
+	protected int ply = 0;
+
+	/**
+	 * The Zobrist hash of the current position.
+	 */
+	protected long hash = 0L;
+
+	/**
+	 * A flat copy of the board: the code of the piece on each 0x88 square (0 when empty, otherwise 1 + value + 8 *
+	 * owner) followed by the number of times that piece has moved. Kept in sync by placePiece and removePiece so
+	 * that snapshot() is a single array copy.
+	 */
+	private byte[] squares = new byte[2 * _0x88_BOARD_SIZE];
+
+	/**
+	 * The moves performed with performMove, most recent first.
+	 */
+	private GameHistory gameHistory = null;
+
+	/**
+	 * The castling rights before each move on the undo stack.
+	 */
+	private int[] castlingHistory = new int[INITIAL_HISTORY_SIZE];
+
+	/**
+	 * The en passant square before each move on the undo stack.
+	 */
+	private int[] enPassantHistory = new int[INITIAL_HISTORY_SIZE];
+
+	/**
+	 * The fifty-move counter before each move on the undo stack.
+	 */
+	private int[] halfmoveHistory = new int[INITIAL_HISTORY_SIZE];
+
+	/**
+	 * The number of moves on the undo stack.
+	 */
+	private int historyPly = 0;
+
+	/**
+	 * When set, every move and undo recomputes the hash and evaluation terms from scratch and throws an
+	 * IllegalStateException if they do not match the incrementally maintained values. Intended for debugging only.
+	 */
+	protected static boolean verifyIncrementalState = false;
+
+	/**
+	 * Contains every piece created for white, including those that have been captured (see isCaptured).
 	 */
 	protected List<ChessPiece> whitePieces;
 
 	/**
-	 * Contains the pieces belonging to black that have not been captured.
+	 * Contains every piece created for black, including those that have been captured (see isCaptured).
 	 */
 	protected List<ChessPiece> blackPieces;
 
@@ -542,6 +1224,50 @@ public class ChessGame {
 		112, 113, 114, 115, 116, 117, 118, 119 // Rook, Knight, Bishop, Queen, King, Bishop, Knight, Rook
 	};
 
+	/**
+	 * The most pieces of one type a player can have: two originals plus eight promoted pawns.
+	 */
+	private static final int MAX_PIECES_PER_TYPE = 10;
+
+	/**
+	 * The offset of the move counts within the squares array.
+	 */
+	private static final int MOVE_COUNT_OFFSET = 128;
+
+	/**
+	 * The initial capacity of the undo stack.
+	 */
+	private static final int INITIAL_HISTORY_SIZE = 256;
+
+	/**
+	 * Indicates that there is no en passant square.
+	 */
+	protected static final int NO_SQUARE = -1;
+
+	/**
+	 * Castling rights flags.
+	 */
+	protected static final int WHITE_KINGSIDE_CASTLING = 1;
+	protected static final int WHITE_QUEENSIDE_CASTLING = 2;
+	protected static final int BLACK_KINGSIDE_CASTLING = 4;
+	protected static final int BLACK_QUEENSIDE_CASTLING = 8;
+	protected static final int ALL_CASTLING_RIGHTS = 15;
+
+	/**
+	 * For each square on the 0x88 board, the castling rights that survive a move from or to that square.
+	 */
+	private static final int[] CASTLING_MASKS = new int[_0x88_BOARD_SIZE];
+
+	static {
+		Arrays.fill(CASTLING_MASKS, ALL_CASTLING_RIGHTS);
+		CASTLING_MASKS[0] &= ~WHITE_QUEENSIDE_CASTLING; // a1
+		CASTLING_MASKS[4] &= ~(WHITE_KINGSIDE_CASTLING | WHITE_QUEENSIDE_CASTLING); // e1
+		CASTLING_MASKS[7] &= ~WHITE_KINGSIDE_CASTLING; // h1
+		CASTLING_MASKS[112] &= ~BLACK_QUEENSIDE_CASTLING; // a8
+		CASTLING_MASKS[116] &= ~(BLACK_KINGSIDE_CASTLING | BLACK_QUEENSIDE_CASTLING); // e8
+		CASTLING_MASKS[119] &= ~BLACK_KINGSIDE_CASTLING; // h8
+	}
+
 	/**
 	 * Represents the white player.
 	 */
@@ -594,6 +1320,8 @@ public class ChessGame {
 			this.target = toCopy.target;
 			this.isCapture = toCopy.isCapture;
 			this.isPromotion = toCopy.isPromotion;
+			this.promotion = toCopy.promotion;
+			this.encoded = toCopy.encoded;
 		}
 
 		/**
@@ -614,6 +1342,11 @@ public class ChessGame {
 			move.append(ChessGame.FILE_SYMBOLS[this.target % 16]);
 			move.append(this.target / 16 + 1);
 
+			// Append the promotion piece, if any.
+			if (this.isPromotion) {
+				move.append(ChessPiece.PIECE_SYMBOLS[this.promotion]);
+			}
+
 			// return the result
 			return move.toString();
 		}
@@ -643,5 +1376,84 @@ public class ChessGame {
 		 */
 		boolean isPromotion = false;
 
+		/**
+		 * The piece a promoted pawn becomes.
+		 */
+		int promotion = ChessPiece.QUEEN;
+
+		/**
+		 * This move packed into an integer (see Move), set once the move has been performed.
+		 */
+		int encoded = Move.NONE;
+
+	}
+
+	/**
+	 * An immutable, compact copy of a position: the board as flat bytes plus the side to move, castling rights, en
+	 * passant square, fifty-move counter and hash. The game history is shared rather than copied.
+	 */
+	public static final class Snapshot {
+
+		private Snapshot(ChessGame aGame) {
+			this.squares = new byte[aGame.squares.length];
+			System.arraycopy(aGame.squares, 0, this.squares, 0, this.squares.length);
+			this.sideToMove = aGame.sideToMove;
+			this.castlingRights = aGame.castlingRights;
+			this.enPassantSquare = aGame.enPassantSquare;
+			this.halfmoveClock = aGame.halfmoveClock;
+			this.ply = aGame.ply;
+			this.hash = aGame.hash;
+			this.history = aGame.gameHistory;
+		}
+
+		/**
+		 * Returns the Zobrist hash of the captured position.
+		 * 
+		 * @return a 64-bit key
+		 */
+		public long getHash() {
+			return hash;
+		}
+
+		/**
+		 * The piece codes and move counts copied from ChessGame.squares.
+		 */
+		private final byte[] squares;
+
+		private final int sideToMove;
+		private final int castlingRights;
+		private final int enPassantSquare;
+		private final int halfmoveClock;
+		private final int ply;
+		private final long hash;
+		private final GameHistory history;
+	}
+
+	/**
+	 * One entry in a game's move history. Entries are immutable and each points at the one before it, so every game
+	 * and snapshot derived from the same game shares a single chain.
+	 */
+	public static final class GameHistory {
+
+		GameHistory(int move, long hash, GameHistory previous) {
+			this.move = move;
+			this.hash = hash;
+			this.previous = previous;
+		}
+
+		/**
+		 * The packed move that was performed.
+		 */
+		public final int move;
+
+		/**
+		 * The hash of the position before the move was performed.
+		 */
+		public final long hash;
+
+		/**
+		 * The entry for the move before this one, or null.
+		 */
+		public final GameHistory previous;
 	}
 }
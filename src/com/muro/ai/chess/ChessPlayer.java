@@ -1,6 +1,7 @@
 package com.muro.ai.chess;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.net.MalformedURLException;
@@ -9,21 +10,41 @@ import java.util.Scanner;
 
 import org.json.JSONObject;
 
-import com.muro.ai.chess.ChessGame.ChessMove;
-
 public class ChessPlayer {
 
 	public static void main(String[] args) throws IOException {
 
 		if (args.length < 4) {
 			System.out.println("Please enter a color, game ID, team number, and team secert in the following format.");
-			System.out.println("    ChessPlayer <w/b> <gameId> <teamNumber> <teamSecret>");
+			System.out.println("    ChessPlayer <w/b> <gameId> <teamNumber> <teamSecret> [searchThreads] [ponder] [book] [bitbases]");
 			System.out.println("For example: ChessPlayer w 99 15 abc123ae");
 			System.exit(-1);
 		}
 
 		ChessPlayer theGame = new ChessPlayer(args[0], args[1], args[2], args[3]);
 
+		// Search with every core unless told otherwise.
+		if (args.length > 4) {
+			theGame.setSearchThreads(Integer.parseInt(args[4]));
+		}
+
+		// Think on the opponent's clock unless told otherwise.
+		if (args.length > 5) {
+			theGame.setPondering(Boolean.parseBoolean(args[5]));
+		}
+
+		// Play the opening from the book, if there is one.
+		File bookFile = new File((args.length > 6) ? args[6] : DEFAULT_BOOK);
+		if (bookFile.exists()) {
+			theGame.setOpeningBook(new OpeningBook(bookFile));
+		}
+
+		// Look up simple endings in the bitbases, if there are any.
+		File bitbaseDirectory = new File((args.length > 7) ? args[7] : DEFAULT_BITBASES);
+		if (bitbaseDirectory.isDirectory()) {
+			System.out.println("Endgame bitbases loaded: " + ChessSearch.loadBitbases(bitbaseDirectory));
+		}
+
 		/** The Game Loop **/
 		while (!theGame.isGameOver) {
 
@@ -44,6 +65,9 @@ public class ChessPlayer {
 			}
 		}
 
+		// Nobody needs the ponder search any more.
+		theGame.engine.stopPondering();
+
 		// Determine who the winner was and output the result.
 		JSONObject jsonObj = new JSONObject(theGame.pollServer());
 		System.out.println("Game Over. Player " + jsonObj.getInt("winner") + " won.");
@@ -75,7 +99,42 @@ public class ChessPlayer {
 
 		// Create a new game board initialized to the default state.
 		gameBoard = new ChessGame();
+		gameBoard.initGame();
+
+		// The engine follows the game from the same starting state.
+		engine = new ChessEngine(HASH_SIZE, searchThreads);
+
+	}
+
+	/**
+	 * Sets the number of threads used to search for the robot's moves.
+	 * 
+	 * @param searchThreads the total number of searching threads (at least one)
+	 */
+	public void setSearchThreads(int searchThreads) {
+		this.searchThreads = Math.max(searchThreads, 1);
+		engine.setThreads(this.searchThreads);
+	}
+
+	/**
+	 * Sets whether the robot keeps searching while the opponent thinks.
+	 * 
+	 * @param pondering true to ponder
+	 */
+	public void setPondering(boolean pondering) {
+		this.pondering = pondering;
+	}
 
+	/**
+	 * Sets the opening book the robot plays from before it starts searching.
+	 * 
+	 * @param openingBook the book, or null to always search
+	 */
+	public void setOpeningBook(OpeningBook openingBook) {
+		engine.setOpeningBook(openingBook);
+		if (openingBook != null) {
+			System.out.println("Opening book loaded: " + openingBook.size() + " entries");
+		}
 	}
 
 	/**
@@ -97,6 +156,7 @@ public class ChessPlayer {
 				System.out.println("Invalid move. Try again");
 			} else {
 				gameBoard.performMove(userInput);
+				engine.applyMove(userInput);
 				valid = true;
 			}
 		}
@@ -123,25 +183,57 @@ public class ChessPlayer {
 			searchTime = MINIMUM_TIME_PER_MOVE + 45;
 		}
 
-		ChessMove nextBest = ChessSearch.findNextMove(gameBoard, playerColor, searchTime, 4);
+		// Book moves are played at once, banking the time for the middlegame.
+		int nextBest = engine.findBookMove();
+		boolean fromBook = (nextBest != Move.NONE);
+
+		// Otherwise search as deep as the time allows; after a ponder hit the search is already under way.
+		if (!fromBook) {
+			nextBest = engine.findBestMove(playerColor, searchTime);
+		}
+
+		// Moves are only converted to strings at the edge, when they are sent to the server.
+		String moveString = Move.toString(nextBest);
 
 		// Send the move to the server.
-		boolean valid = sendMove(nextBest.toString());
+		boolean valid = sendMove(moveString);
 
 		while(!valid) {
 
 			System.out.println("Invalid move selected. Try again.");
 
 			if (playerColor == ChessGame.WHITE_PLAYER) {
-				valid = sendMove(ChessSearch.randomWhiteMove(gameBoard).toString());
+				moveString = Move.toString(ChessSearch.randomWhiteMove(gameBoard));
 			} else {
-				valid = sendMove(ChessSearch.randomBlackMove(gameBoard).toString());
+				moveString = Move.toString(ChessSearch.randomBlackMove(gameBoard));
 			}
+			valid = sendMove(moveString);
 		}
 
-		gameBoard.performMove(nextBest.toString());
-		System.out.println("Move selected: " + nextBest.toString());
+		// Record the move the server actually accepted.
+		gameBoard.performMove(moveString);
+		engine.applyMove(moveString);
+		System.out.println("Move selected: " + moveString);
+
+		// Show the line the search expects to follow.
+		if (fromBook) {
+			System.out.println("Played from the opening book.");
+		} else {
+			StringBuilder line = new StringBuilder();
+			for (int move : engine.getPrincipalVariation()) {
+				line.append(Move.toString(move)).append(' ');
+			}
+			System.out.println("Principal variation: " + line + "(score " + engine.getScore() + ")");
+		}
 		System.out.println();
+
+		// Keep thinking while the opponent does.
+		if (pondering) {
+			int ponderMove = engine.startPondering();
+			if (ponderMove != Move.NONE) {
+				System.out.println("Pondering on " + Move.toString(ponderMove));
+			}
+		}
 	}
 
 	/**
@@ -161,8 +253,9 @@ public class ChessPlayer {
 		// If it is currently our turn AND this is NOT the first turn of the game.
 		if (isPlayersMove && moveCount > 0) {
 			lastMove = jsonObj.getString("lastmove");
-			// Update the game board with our opponent's last move.
+			// Update the game board with our opponent's last move, and let the engine follow.
 			gameBoard.performMove(jsonObj.getString("lastmove"));
+			engine.applyMove(lastMove);
 		} else { // Its not our turn.
 			// Check if the game is over.
 			if (jsonObj.has("gameover") && jsonObj.getBoolean("gameover")) {
@@ -320,6 +413,21 @@ public class ChessPlayer {
 	 */
 	private boolean isGameOver = false;
 
+	/**
+	 * The number of threads used to search for the robot's moves; every core by default.
+	 */
+	private int searchThreads = Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * Whether the robot keeps searching while the opponent thinks.
+	 */
+	private boolean pondering = true;
+
+	/**
+	 * The engine that searches for the robot's moves, kept for the whole game.
+	 */
+	private ChessEngine engine = null;
+
 	/**
 	 * The URL of the game server.
 	 */
@@ -330,6 +438,21 @@ public class ChessPlayer {
 	 */
 	private static final int MILLIS_PER_SEC = 1000;
 
+	/**
+	 * The size of the engine's transposition table, in megabytes.
+	 */
+	private static final int HASH_SIZE = 64;
+
+	/**
+	 * The opening book read when none is named on the command line, if it exists.
+	 */
+	private static final String DEFAULT_BOOK = "book.bin";
+
+	/**
+	 * The directory of endgame bitbases read when none is named on the command line, if it exists.
+	 */
+	private static final String DEFAULT_BITBASES = "bitbases";
+
 	/**
 	 * Represents a minimum number of seconds to take for each move.
 	 */
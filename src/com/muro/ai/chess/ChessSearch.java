@@ -1,9 +1,8 @@
 package com.muro.ai.chess;
 
-import java.util.List;
-import java.util.ArrayList;
-
-import com.muro.ai.chess.ChessGame.ChessMove;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
 
 public class ChessSearch {
 
@@ -11,507 +10,1936 @@ public class ChessSearch {
 
 	}
 
-	public static ChessMove findNextMove(ChessGame gameState, int teamNumber, int timeLimit, int depthLimit) {
-		ChessSearch theSearch = new ChessSearch(gameState);
-		return theSearch.alphaBetaSearch(timeLimit, depthLimit, teamNumber);
+	public static int findNextMove(ChessGame gameState, int teamNumber, int timeLimit, int depthLimit) {
+		return findNextMove(gameState, teamNumber, timeLimit, depthLimit, 1);
+	}
+
+	/**
+	 * Searches for the best move using Lazy SMP: the calling thread and (nThreads - 1) helper threads each run their
+	 * own iterative-deepening search on their own copy of the game, sharing only the transposition table. The helpers
+	 * never report a move; they only fill the table with results the main search can reuse, and are stopped as soon
+	 * as the main search finishes.
+	 * 
+	 * @param gameState the game to search
+	 * @param teamNumber the player to move
+	 * @param timeLimit the maximum duration of the search, in seconds
+	 * @param depthLimit the deepest iteration to search
+	 * @param nThreads the total number of searching threads, including the calling thread
+	 * @return a packed move (see Move) specifying the best move
+	 */
+	public static int findNextMove(ChessGame gameState, int teamNumber, int timeLimit, int depthLimit, int nThreads) {
+		ChessSearch theSearch = new ChessSearch(gameState, sharedTable);
+		ChessSearch[] helpers = new ChessSearch[Math.max(nThreads - 1, 0)];
+		for (int i = 0; i < helpers.length; i+=1) {
+			helpers[i] = new ChessSearch(gameState, sharedTable);
+		}
+		theSearch.startClock(timeLimit);
+		return search(theSearch, helpers, teamNumber, timeLimit, depthLimit);
+	}
+
+	/**
+	 * Runs the specified main search, whose clock must already have been started, together with the specified Lazy SMP
+	 * helpers. Every search must be on the same position and share the main search's transposition table. See
+	 * findNextMove.
+	 * 
+	 * @param theSearch the main search, which may be stopped or given a new time limit from another thread
+	 * @param helpers the helper searches, each run on a thread of its own
+	 * @param teamNumber the player to move
+	 * @param timeLimit the maximum duration of the helpers' searches, in seconds; they are stopped when the main search
+	 *        finishes in any case
+	 * @param depthLimit the deepest iteration to search
+	 * @return a packed move (see Move) specifying the best move
+	 */
+	static int search(ChessSearch theSearch, ChessSearch[] helpers, final int teamNumber, int timeLimit,
+			final int depthLimit) {
+
+		// Let entries from earlier searches be replaced first.
+		theSearch.transpositionTable.newSearch();
+
+		// Start the helpers, half of them one iteration ahead so that the threads do not all search the same depth.
+		Thread[] helperThreads = new Thread[helpers.length];
+		for (int i = 0; i < helpers.length; i+=1) {
+			final ChessSearch helper = helpers[i];
+			final int firstDepth = i % 2;
+			helper.isHelper = true;
+			helper.startClock(timeLimit);
+			helperThreads[i] = new Thread(new Runnable() {
+				public void run() {
+					helper.iterativeDeepening(depthLimit, teamNumber, firstDepth);
+				}
+			}, "search-helper-" + (i + 1));
+			helperThreads[i].setDaemon(true);
+			helperThreads[i].start();
+		}
+
+		try {
+			int bestMove = theSearch.iterativeDeepening(depthLimit, teamNumber, 0);
+
+			// Keep the line behind the move for anyone who wants to report it.
+			lastPrincipalVariation = theSearch.getPrincipalVariation();
+			lastScore = theSearch.bestLineScore;
+
+			return bestMove;
+		} finally {
+			// Stop the helpers and wait for them to let go of the table.
+			for (ChessSearch helper : helpers) {
+				helper.stop();
+			}
+			for (Thread helperThread : helperThreads) {
+				try {
+					helperThread.join();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
 	}
 
-	public static ChessMove randomWhiteMove(ChessGame gameState) {
+	public static int randomWhiteMove(ChessGame gameState) {
 		ChessSearch theSearch = new ChessSearch(gameState);
-		List<ChessMove> moveList = theSearch.generateWhiteMoves();
-		int randomMove = (int) (Math.random() * moveList.size());
-		return moveList.get(randomMove);
+		int[] moveList = theSearch.moveStack.get(0);
+		int nMoves = theSearch.generateWhiteMoves(moveList);
+		int randomMove = (int) (Math.random() * nMoves);
+		return moveList[randomMove];
 	}
 
-	public static ChessMove randomBlackMove(ChessGame gameState) {
+	public static int randomBlackMove(ChessGame gameState) {
 		ChessSearch theSearch = new ChessSearch(gameState);
-		List<ChessMove> moveList = theSearch.generateBlackMoves();
-		int randomMove = (int) (Math.random() * moveList.size());
-		return moveList.get(randomMove);
+		int[] moveList = theSearch.moveStack.get(0);
+		int nMoves = theSearch.generateBlackMoves(moveList);
+		int randomMove = (int) (Math.random() * nMoves);
+		return moveList[randomMove];
 	}
 
 
 	/**
-	 * Constructs a new ChessSearch to be performed on the specified ChessGame.
+	 * Returns the principal variation found by the last call to findNextMove.
+	 * 
+	 * @return the moves of the line, starting with the move returned; empty if not even one iteration completed
+	 */
+	public static int[] getLastPrincipalVariation() {
+		return lastPrincipalVariation.clone();
+	}
+
+	/**
+	 * Returns the score of the principal variation found by the last call to findNextMove, from the point of view of
+	 * the player who moved.
+	 * 
+	 * @return the score, in centipawns
+	 */
+	public static int getLastScore() {
+		return lastScore;
+	}
+
+	/**
+	 * Replaces the transposition table shared by every search started with findNextMove.
+	 * 
+	 * @param megabytes the size of the new table
+	 */
+	public static void setHashSize(int megabytes) {
+		sharedTable = new TranspositionTable(megabytes);
+	}
+
+	/**
+	 * Loads the endgame bitbases found in the specified directory (see BitbaseGenerator) for every search to consult.
+	 * The files are memory-mapped, so loading them takes next to no time whatever their size.
+	 * 
+	 * @param directory the directory holding the bitbase files
+	 * @return the number of bitbases loaded
+	 * @throws IOException if a bitbase file cannot be read
+	 */
+	public static int loadBitbases(File directory) throws IOException {
+		Bitbase[] tables = new Bitbase[ChessPiece.PIECE_SYMBOLS.length];
+		int nLoaded = 0;
+		for (int piece : BITBASE_PIECES) {
+			File bitbaseFile = new File(directory, Bitbase.fileName(piece));
+			if (bitbaseFile.exists()) {
+				tables[piece] = new Bitbase(bitbaseFile);
+				nLoaded+=1;
+			}
+		}
+		bitbases = tables;
+		return nLoaded;
+	}
+
+	/**
+	 * Constructs a new ChessSearch to be performed on the specified ChessGame, using the shared transposition table.
 	 * 
 	 * @param toSearch a ChessGame
 	 */
 	ChessSearch(ChessGame toSearch) {
-		chessGame = new ChessGame(toSearch);
-		globalMax = null;
-		globalMin = null;
+		this(toSearch, sharedTable);
 	}
 
 	/**
-	 * Generates a chess move by performing alpha-beta search on the current game state. The team parameter is used to specify
-	 * the perspective from which to perform the search. A value of 2 for the team number specifies a search for the black player and a value of 1
-	 * is for the white player. 
+	 * Constructs a new ChessSearch to be performed on the specified ChessGame.
 	 * 
-	 * @param timeLimit the maximum duration to execute the search
-	 * @param depthLimit the maximum search depth
-	 * @param team an integer (1 or 2) representing the white or black team
+	 * @param toSearch a ChessGame
+	 * @param transpositionTable the table in which search results are kept between searches
+	 */
+	ChessSearch(ChessGame toSearch, TranspositionTable transpositionTable) {
+		chessGame = new ChessGame(toSearch.snapshot());
+		this.transpositionTable = transpositionTable;
+
+		// Give each ply a move picker working in that ply's buffers.
+		for (int ply = 0; ply < MAX_PLY; ply+=1) {
+			movePickers[ply] = new MovePicker(this, moveOrdering, moveStack.get(ply), moveOrdering.scores(ply));
+		}
+	}
+
+	/**
+	 * Returns the search's private copy of the game, on which moves are generated.
 	 * 
-	 * @return a ChessMove specifying the best move
+	 * @return a ChessGame
 	 */
-	private ChessMove alphaBetaSearch(int timeLimit, int depthLimit, int team) {
+	ChessGame getChessGame() {
+		return chessGame;
+	}
 
-		// Set the search duration value.
-		this.timeLimit = timeLimit * NANOS_PER_SECOND;
-		// Set the depth limit.
-		this.depthLimit = depthLimit;
-		// Mark the start time.
+	/**
+	 * Marks the start of the search and works out its deadlines. This is done before the search is started, possibly
+	 * on another thread, so that the deadlines can safely be changed by setTimeLimit (or the search stopped) at any
+	 * time. A search that is reused for another move starts its clock again.
+	 * 
+	 * @param timeLimit the maximum duration of the search, in seconds
+	 */
+	void startClock(int timeLimit) {
+		aborted = false;
 		startTime = System.nanoTime();
+		setDeadlines(timeLimit);
+	}
 
-		// Perform the search.
-		if (team == ChessGame.WHITE_PLAYER) {
-			alphaSearch(Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
-			return globalMax;
-		} else {
-			betaSearch(Integer.MIN_VALUE, Integer.MAX_VALUE, 0);
-			return globalMin;
+	/**
+	 * Replaces the time limit of the search, still measured from the start of the search. A search that was started
+	 * with a long time limit (to ponder, say) and has already passed the point after which no new iteration would be
+	 * started is stopped at once, so that it returns the best move of its last completed iteration.
+	 * 
+	 * @param timeLimit the maximum duration of the search, in seconds
+	 */
+	void setTimeLimit(int timeLimit) {
+		setDeadlines(timeLimit);
+		if (System.nanoTime() > softDeadline) {
+			stop();
 		}
 	}
 
-	private int alphaSearch(int alpha, int beta, int depth) {
+	/**
+	 * Works out the deadlines of the search from its start time. Helpers keep going until they are stopped.
+	 */
+	private void setDeadlines(int timeLimit) {
+		hardDeadline = startTime + timeLimit * NANOS_PER_SECOND;
+		softDeadline = isHelper ? hardDeadline : startTime + timeLimit * NANOS_PER_SECOND * SOFT_TIME_PERCENT / 100;
+	}
+
+	/**
+	 * Searches the current game state one ply deeper at a time until the depth limit is reached, a mate is found or
+	 * time runs out. No new iteration is started once half of the time limit has passed, and an iteration still
+	 * running when the whole time limit has passed is abandoned. The best move of the last completed iteration is
+	 * returned, so the result never comes from a half-searched root. The clock must have been started with startClock.
+	 * 
+	 * @param maxDepth the deepest iteration to search (see alphaBetaSearch)
+	 * @param team the player to move
+	 * @param firstDepth the first iteration to search
+	 * @return a packed move (see Move) specifying the best move
+	 */
+	private int iterativeDeepening(int maxDepth, int team, int firstDepth) {
+
+		// Age what the move ordering learned in earlier searches of this game.
+		nodes = 0;
+		moveOrdering.newSearch(chessGame.getPly());
+
+		// Once the game is in an ending the bitbases cover, the search must find the mate itself.
+		chessGame.setSideToMove(team);
+		rootInBitbase = probeBitbases() != NO_BITBASE_SCORE;
+
+		int bestMove = Move.NONE;
+		for (int iteration = firstDepth; iteration <= Math.min(maxDepth, MAX_DEPTH); iteration+=1) {
+
+			// Expect the score to stay close to the previous iteration's, unless that was a mate.
+			int alpha = -INFINITY;
+			int beta = INFINITY;
+			int window = aspirationWindow;
+			if (useAspirationWindows && bestMove != Move.NONE && iteration >= ASPIRATION_MIN_DEPTH
+					&& !isMateScore(rootScore)) {
+				alpha = rootScore - window;
+				beta = rootScore + window;
+			}
+
+			// Search, widening the window on the side the score fell out of until it lands inside.
+			int move;
+			while (true) {
+				move = alphaBetaSearch(iteration, team, alpha, beta);
+				if (aborted) {
+					break;
+				}
+				if (rootScore <= alpha) {
+					window *= 2;
+					alpha = Math.max(rootScore - window, -INFINITY);
+				} else if (rootScore >= beta) {
+					window *= 2;
+					beta = Math.min(rootScore + window, INFINITY);
+				} else {
+					break;
+				}
+			}
 
-		// Have we exceeded the time limit?
-		if (System.nanoTime() - startTime > timeLimit || depth > depthLimit) { 
-			return evaluate(chessGame);
+			// An abandoned iteration tells us nothing; fall back on the previous one.
+			if (aborted) {
+				break;
+			}
+			bestMove = move;
+			bestLineLength = pvLength[0];
+			bestLineScore = rootScore;
+			System.arraycopy(pvTable[0], 0, bestLine, 0, bestLineLength);
+
+			// A forced mate will not change with more depth, and there is no point starting an iteration we cannot finish.
+			if (isMateScore(rootScore) || System.nanoTime() > softDeadline) {
+				break;
+			}
 		}
 
-		// Generate all moves for white...
-		List<ChessMove> whiteMoves = generateWhiteMoves();
+		// If not even the first iteration finished, take the first legal move.
+		if (bestMove == Move.NONE) {
+			int[] moves = moveStack.get(0);
+			if (generatePlayerMoves(team, moves) > 0) {
+				bestMove = moves[0];
+			}
+		}
 
-		// We haven't seen anything great thus far.
-		int currentBest = Integer.MIN_VALUE;
+		return bestMove;
+	}
 
-		for (ChessMove currentMove : whiteMoves) {
+	/**
+	 * Stops the search in progress as soon as possible. The search returns the best move of its last completed
+	 * iteration.
+	 */
+	public void stop() {
+		aborted = true;
+	}
 
-			// Make the move.
-			chessGame.doMove(currentMove);
-			chessGame.moveHistory.addFirst(currentMove);
+	/**
+	 * Generates a chess move by performing alpha-beta search on the current game state to a fixed depth. The team
+	 * parameter specifies the perspective from which to perform the search (WHITE_PLAYER or BLACK_PLAYER).
+	 * 
+	 * @param depthLimit the deepest ply at which moves are still generated; leaves lie one ply deeper
+	 * @param team the player to move
+	 * @param alpha the lower end of the window in which the root score is expected
+	 * @param beta the upper end of the window in which the root score is expected
+	 * 
+	 * @return a packed move (see Move) specifying the best move, only meaningful if the search was not aborted and the
+	 *         root score fell inside the window
+	 */
+	private int alphaBetaSearch(int depthLimit, int team, int alpha, int beta) {
 
-			// Check if this move results in a value greater than our current max.
-			currentBest = Math.max(currentBest, betaSearch(alpha, beta, depth+1));
+		// Search from the specified player's point of view.
+		chessGame.setSideToMove(team);
 
-			// Check if MIN will allow us to use this value.
-			if (currentBest >= beta) {
-				// MIN has seen a worse value so we prune.
-				chessGame.undoMove(currentMove);
-				chessGame.moveHistory.removeFirst();
-				return currentBest;
+		// Perform the search; the root move is the first move of the principal variation.
+		pvLength[0] = 0;
+		rootScore = negamax(alpha, beta, depthLimit + 1, 0);
+
+		return (pvLength[0] > 0) ? pvTable[0][0] : Move.NONE;
+	}
+
+	/**
+	 * Counts a node and, every TIME_CHECK_INTERVAL nodes, aborts the search if the hard deadline has passed.
+	 * 
+	 * @return true if the search has been aborted
+	 */
+	private boolean checkAbort() {
+		if ((++nodes & (TIME_CHECK_INTERVAL - 1)) == 0 && System.nanoTime() > hardDeadline) {
+			aborted = true;
+		}
+		return aborted;
+	}
+
+	/**
+	 * Searches the current position with alpha-beta pruning in negamax form: every score is from the point of view of
+	 * the player to move, so one routine serves both players. The best line found is left in pvTable[ply].
+	 * 
+	 * @param alpha the score the player to move is already guaranteed
+	 * @param beta the score the opponent is already guaranteed (negated)
+	 * @param draft the number of plies left to search
+	 * @param ply the distance from the root
+	 * @return the score of the position for the player to move
+	 */
+	private int negamax(int alpha, int beta, int draft, int ply) {
+
+		// Has the search been stopped?
+		if (checkAbort()) {
+			return 0;
+		}
+
+		// No line has been found below this node yet.
+		pvLength[ply] = ply;
+
+		// Have we reached the depth limit?  Then settle the captures in progress before evaluating.
+		if (draft <= 0 || ply >= MAX_DEPTH) {
+			return useQuiescence ? quiescence(alpha, beta, ply) : evaluate(chessGame);
+		}
+
+		// Has this position already been searched deeply enough to decide this node?
+		long entry = transpositionTable.probe(chessGame.getHash());
+		if (entry != 0 && ply > 0 && TranspositionTable.depth(entry) >= draft) {
+			int score = scoreFromTable(TranspositionTable.score(entry), ply);
+			int bound = TranspositionTable.bound(entry);
+			if (bound == TranspositionTable.EXACT
+					|| (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+					|| (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+				return score;
 			}
+		}
 
-			// Check if this move results in a better ALPHA value.
-			if ( currentBest > alpha ) {
-				alpha = currentBest;
-				if (depth == 0) {
-					globalMax = currentMove;
-				}
+		// Endgames covered by the bitbases are settled by a single lookup instead of a search. Draws are exact, but a
+		// win is only taken on trust while the root is still outside the ending; after that the wins must be searched
+		// to find the mate, though drawn replies are still cut off.
+		if (ply > 0) {
+			int score = probeBitbases();
+			if (score == DRAW_SCORE || (score != NO_BITBASE_SCORE && !rootInBitbase)) {
+				return score;
 			}
+		}
 
-			// Undo the last move and loop again..
-			chessGame.undoMove(currentMove);
-			chessGame.moveHistory.removeFirst();
+		int player = chessGame.getSideToMove();
+		boolean inCheck = isInCheck(player);
+
+		// The selective search prunes only quiet positions below the root whose bounds are not mate scores, and it
+		// needs the static evaluation to judge them. Nodes searched with an open window may become part of the
+		// principal variation, so only null-window nodes are cut off without searching any move.
+		boolean mayPrune = ply > 0 && !inCheck && !isMateScore(alpha) && !isMateScore(beta);
+		boolean pvNode = beta - alpha > 1;
+		int staticEval = mayPrune ? evaluate(chessGame) : -INFINITY;
+
+		// Reverse futility pruning: so far above beta near the leaves that no reply is likely to bring the score back.
+		if (mayPrune && !pvNode && useReverseFutilityPruning && draft <= futilityMaxDraft
+				&& staticEval - reverseFutilityMargin * draft >= beta) {
+			return staticEval;
 		}
 
-		return currentBest;
-	}
+		// Null-move pruning: if the opponent, given a free move, still cannot bring the score below beta, a real move
+		// would not either. Players with only pawns left are often in zugzwang, where passing would be the best move, so
+		// they are never allowed to pass. Neither are two passes in a row allowed.
+		if (mayPrune && !pvNode && useNullMovePruning && draft >= nullMoveMinDraft && staticEval >= beta
+				&& playedMoves[ply - 1] != Move.NONE && hasNonPawnMaterial(player)) {
+			int reduction = nullMoveReduction + draft / nullMoveDepthDivisor;
 
-	private int betaSearch(int alpha, int beta, int depth) {
+			playedMoves[ply] = Move.NONE;
+			chessGame.doNullMove();
+			int score = -negamax(-beta, -beta + 1, draft - 1 - reduction, ply + 1);
+			chessGame.undoNullMove();
 
-		// Have we reached the depth limit or exceeded our allotted search time?
-		if (System.nanoTime() - startTime > timeLimit|| depth > depthLimit) { 
-			return evaluate(chessGame);
+			if (aborted) {
+				return 0;
+			}
+			if (score >= beta) {
+				// A mate found after passing is not proven, so report only the bound.
+				return isMateScore(score) ? beta : score;
+			}
 		}
 
-		// Generate all possible moves for black.
-		List<ChessMove> blackMoves = generateBlackMoves();
+		// Futility pruning: near the leaves, quiet moves cannot raise a static evaluation this far below alpha.
+		boolean futile = mayPrune && useFutilityPruning && draft <= futilityMaxDraft
+				&& staticEval + futilityMargin * draft <= alpha;
+
+		// Hand out the moves in stages, so that the likeliest cutoffs are tried first, starting with the best move from
+		// the last search of this position, and the quiet moves are generated only if nothing earlier cuts off.
+		int hashMove = (entry != 0) ? TranspositionTable.move(entry) : Move.NONE;
+		int previousMove = (ply > 0) ? playedMoves[ply - 1] : Move.NONE;
+		MovePicker picker = movePickers[ply];
+		picker.reset(player, ply, hashMove, previousMove);
+		int[] quiets = quietsSearched[ply];
+		int nQuiets = 0;
 
 		// We haven't seen anything great thus far.
-		int currentMin = Integer.MAX_VALUE;
+		int bestScore = -INFINITY;
+		int bestMove = Move.NONE;
+		int originalAlpha = alpha;
 
-		for (ChessMove currentMove : blackMoves) {
+		int i = 0;
+		for (int currentMove = picker.next(); currentMove != Move.NONE; currentMove = picker.next(), i+=1) {
 
 			// Make the move.
+			playedMoves[ply] = currentMove;
 			chessGame.doMove(currentMove);
-			chessGame.moveHistory.addFirst(currentMove);
 
-			// Check if this move results in a value that is less than our current minimum.
-			currentMin = Math.min(currentMin, alphaSearch(alpha, beta, depth+1));
+			// Only quiet moves that do not give check are pruned or reduced, and never the first move.
+			boolean quiet = MoveOrdering.isQuiet(currentMove);
+			boolean selective = i > 0 && !inCheck && quiet
+					&& (futile || (useLateMoveReductions && draft >= lmrMinDraft && i >= lmrFullDepthMoves))
+					&& !isInCheck(player ^ 1);
 
-			// Check if MAX will allow us to use this value.
-			if (currentMin <= alpha) {
-				// MAX has already seen a better value so we prune.
+			// Skip futile quiet moves.
+			if (selective && futile) {
 				chessGame.undoMove(currentMove);
-				chessGame.moveHistory.removeFirst();
-				return currentMin;
+				bestScore = Math.max(bestScore, staticEval + futilityMargin * draft);
+				continue;
 			}
 
-			// Check if this move resulted in a lower BETA value.
-			if ( currentMin < beta ) {
-				beta = currentMin;
+			int score;
+			if (i == 0) {
+				// The first move is expected to be the best, so it is searched with the full window.
+				score = -negamax(-beta, -alpha, draft - 1, ply + 1);
+			} else {
+				// Late move reductions: a quiet move ordered this late is searched to a reduced depth, more so the later
+				// it comes and the worse its history.
+				int reduction = 0;
+				if (selective && MoveOrdering.isHistoryScore(picker.score())) {
+					reduction = 1;
+					if (i >= lmrFullDepthMoves * 2) {
+						reduction++;
+					}
+					if (picker.score() < 0) {
+						reduction++;
+					}
+					reduction = Math.min(reduction, draft - 2);
+				}
+
+				// Principal variation search: only prove that the move is no better than alpha, with a null window.
+				score = -negamax(-alpha - 1, -alpha, draft - 1 - reduction, ply + 1);
 
-				if (depth == 0) {
-					globalMin = currentMove;
+				// A reduced move that beats alpha is searched again to full depth.
+				if (reduction > 0 && score > alpha && !aborted) {
+					score = -negamax(-alpha - 1, -alpha, draft - 1, ply + 1);
 				}
-			}
 
-			// Undo the last move and loop again.
+				// A move that beats alpha is the new best; search it again with the full window for its exact score.
+				if (score > alpha && score < beta && !aborted) {
+					score = -negamax(-beta, -alpha, draft - 1, ply + 1);
+				}
+			}
 			chessGame.undoMove(currentMove);
-			chessGame.moveHistory.removeFirst();
+
+			// An aborted subtree has no meaningful score.
+			if (aborted) {
+				return 0;
+			}
+
+			if (score > bestScore) {
+				bestScore = score;
+				bestMove = currentMove;
+
+				// Check if this move results in a better ALPHA value.
+				if (score > alpha) {
+					alpha = score;
+					updatePrincipalVariation(currentMove, ply);
+
+					// The opponent will not allow this line, so we prune.
+					if (score >= beta) {
+						if (quiet) {
+							moveOrdering.recordCutoff(currentMove, quiets, nQuiets, player, ply, draft, previousMove);
+						}
+						storeResult(bestMove, bestScore, ply, draft, TranspositionTable.LOWER_BOUND);
+						return bestScore;
+					}
+				}
+			}
+
+			if (quiet) {
+				quiets[nQuiets++] = currentMove;
+			}
+		}
+
+		// Without a legal move the player is either mated (prefer the longest defence) or stalemated.
+		if (i == 0) {
+			return inCheck ? -MATE_SCORE + ply : DRAW_SCORE;
 		}
 
-		return currentMin;
+		storeResult(bestMove, bestScore, ply, draft,
+				(bestScore > originalAlpha) ? TranspositionTable.EXACT : TranspositionTable.UPPER_BOUND);
+		return bestScore;
 	}
 
 	/**
-	 * A simple evaluation function that returns the difference between white and black's material score.
+	 * Searches only captures and promotions below the horizon of the main search, so that positions are evaluated only
+	 * once they are quiet. The player to move may "stand pat" on the static evaluation instead of capturing, and
+	 * captures that could not raise alpha even if they won the captured piece for free are skipped (delta pruning).
+	 * A player in check searches every evasion instead, when useCheckEvasions is set.
 	 * 
-	 * @param aGame a ChessGame
-	 * @return an integer
+	 * @param alpha the score the player to move is already guaranteed
+	 * @param beta the score the opponent is already guaranteed (negated)
+	 * @param ply the distance from the root
+	 * @return the score of the position for the player to move
 	 */
-	private int evaluate(ChessGame aGame) {
+	private int quiescence(int alpha, int beta, int ply) {
 
-		// Calculate white's material score.
-		int whiteMaterialScore = 0;
-		int whiteMoveScore = 0;
+		// Has the search been stopped?
+		if (checkAbort()) {
+			return 0;
+		}
 
-		for (ChessPiece whitePiece : aGame.whitePieces) {
-			if (!whitePiece.isCaptured) {
+		// No line has been found below this node yet.
+		pvLength[ply] = ply;
 
-				if (whitePiece.value == ChessPiece.PAWN && whitePiece.nMoves >= 2 && chessGame.moveHistory.size() < 10) {
-					whiteMoveScore += (10 * whitePiece.nMoves);
-				}
+		int player = chessGame.getSideToMove();
+		boolean inCheck = useCheckEvasions && isInCheck(player);
+		int standPat = evaluate(chessGame);
 
-				if (whitePiece.value != ChessPiece.PAWN && whitePiece.value != ChessPiece.KING && chessGame.moveHistory.size() < 15) {
-					whiteMoveScore += (15 * whitePiece.nMoves);
-				}
+		// Have we run out of room?
+		if (ply >= MAX_DEPTH) {
+			return standPat;
+		}
+
+		int bestScore;
+		int[] moves = moveStack.get(ply);
+		int nMoves;
 
-				whiteMaterialScore += ChessSearch.MATERIAL_VALUES[whitePiece.value];
+		if (inCheck) {
+			// There is no standing pat in check, and no move at all means mate.
+			nMoves = generatePlayerMoves(player, moves);
+			if (nMoves == 0) {
+				return -MATE_SCORE + ply;
+			}
+			bestScore = -INFINITY;
+		} else {
+			// Standing pat may already be good enough.
+			if (standPat >= beta) {
+				return standPat;
 			}
+			// Not even winning a queen would raise alpha.
+			if (standPat + MATERIAL_VALUES[ChessPiece.QUEEN] + DELTA_MARGIN <= alpha) {
+				return standPat;
+			}
+			alpha = Math.max(alpha, standPat);
+			bestScore = standPat;
+			nMoves = generateCaptures(player, moves);
 		}
 
-		// Calculate black's material score.
-		int blackMaterialScore = 0;
-		int blackMoveScore = 0;
-		for (ChessPiece blackPiece : aGame.blackPieces) {
-			if (!blackPiece.isCaptured) {
+		// Most valuable victims first.
+		int[] scores = moveOrdering.scores(ply);
+		moveOrdering.scoreMoves(moves, scores, nMoves, Move.NONE, player, ply, Move.NONE);
 
-				if (blackPiece.value == ChessPiece.PAWN && blackPiece.nMoves >= 2 && chessGame.moveHistory.size() < 10) {
-					blackMoveScore += (10 * blackPiece.nMoves);
-				}
+		for (int i = 0; i < nMoves; i+=1) {
+			int currentMove = MoveOrdering.selectNext(moves, scores, i, nMoves);
 
-				if (blackPiece.value != ChessPiece.PAWN && blackPiece.value != ChessPiece.KING && chessGame.moveHistory.size() < 15) {
-					blackMoveScore += (15 * blackPiece.nMoves);
-				}
+			// Delta pruning: skip captures that cannot raise alpha even with a safety margin.
+			if (!inCheck && !Move.isPromotion(currentMove)
+					&& standPat + MATERIAL_VALUES[Move.captured(currentMove)] + DELTA_MARGIN <= alpha) {
+				continue;
+			}
+
+			// Skip captures that lose material once every recapture has been played out.
+			if (!inCheck && MoveOrdering.mayLoseMaterial(currentMove) && staticExchange(currentMove) < 0) {
+				continue;
+			}
+
+			chessGame.doMove(currentMove);
+			int score = -quiescence(-beta, -alpha, ply + 1);
+			chessGame.undoMove(currentMove);
+
+			// An aborted subtree has no meaningful score.
+			if (aborted) {
+				return 0;
+			}
 
-				blackMaterialScore += ChessSearch.MATERIAL_VALUES[blackPiece.value];
+			if (score > bestScore) {
+				bestScore = score;
+				if (score > alpha) {
+					alpha = score;
+					updatePrincipalVariation(currentMove, ply);
+					if (score >= beta) {
+						break;
+					}
+				}
 			}
 		}
 
-		int materialScore = whiteMaterialScore - blackMaterialScore;
+		return bestScore;
+	}
+
+	/**
+	 * Makes the specified move followed by the principal variation of the ply below it the principal variation of
+	 * the specified ply.
+	 */
+	private void updatePrincipalVariation(int move, int ply) {
+		int[] line = pvTable[ply];
+		int[] childLine = pvTable[ply + 1];
+		line[ply] = move;
+		int length = pvLength[ply + 1];
+		for (int i = ply + 1; i < length; i+=1) {
+			line[i] = childLine[i];
+		}
+		pvLength[ply] = Math.max(length, ply + 1);
+	}
 
-		int moveScore = whiteMoveScore - blackMoveScore;
+	/**
+	 * Returns the best move stored in the transposition table for the search's current position.
+	 * 
+	 * @return a legal packed move, or Move.NONE if the table holds none
+	 */
+	int getHashMove() {
+		long entry = transpositionTable.probe(chessGame.getHash());
+		int move = (entry != 0) ? TranspositionTable.move(entry) : Move.NONE;
+		return isLegalMove(move) ? move : Move.NONE;
+	}
 
-		return materialScore + moveScore;
+	/**
+	 * Returns the score of the principal variation found by the last completed iteration.
+	 * 
+	 * @return the score, from the point of view of the player to move at the root
+	 */
+	int getPrincipalVariationScore() {
+		return bestLineScore;
 	}
 
-	@SuppressWarnings("unused")
-	private boolean isChecked(ChessPiece aKing) {
-		return false;
+	/**
+	 * Returns the principal variation (the best line for both players) found by the last completed iteration.
+	 * 
+	 * @return the moves of the line, starting with the best move at the root
+	 */
+	int[] getPrincipalVariation() {
+		return Arrays.copyOf(bestLine, bestLineLength);
 	}
 
 	/**
-	 * Generates all possible moves available to white given the current state.
+	 * Stores the result of searching the current position in the transposition table.
 	 * 
-	 * @return a list of ChessMoves
+	 * @param bestMove the best move found
+	 * @param score the score of the position
+	 * @param ply the distance from the root
+	 * @param draft the number of plies searched below the position
+	 * @param bound the bound type of the score
 	 */
-	protected List<ChessMove> generateWhiteMoves() {
-		List<ChessMove> moves = new ArrayList<ChessMove>();
+	private void storeResult(int bestMove, int score, int ply, int draft, int bound) {
+		transpositionTable.store(chessGame.getHash(), bestMove, scoreToTable(score, ply), draft, bound);
+	}
 
-		for (ChessPiece whitePiece : chessGame.whitePieces) {
-			if (!whitePiece.isCaptured) {
-				moves.addAll(generateMoves(whitePiece, ChessGame.WHITE_PLAYER));
-			}
+	/**
+	 * Converts a mate score measured from the root into one measured from the current position, so that the stored
+	 * score stays correct wherever in the tree the position is found again.
+	 */
+	private static int scoreToTable(int score, int ply) {
+		if (score > MATE_SCORE - MAX_PLY) {
+			return score + ply;
+		} else if (score < -MATE_SCORE + MAX_PLY) {
+			return score - ply;
 		}
+		return score;
+	}
 
-		return moves;
+	/**
+	 * Indicates whether the specified score announces a mate.
+	 */
+	private static boolean isMateScore(int score) {
+		return Math.abs(score) > MATE_SCORE - MAX_PLY;
 	}
 
 	/**
-	 * Generates all possible moves to black given the current state.
+	 * Converts a mate score stored by scoreToTable back into one measured from the root.
+	 */
+	private static int scoreFromTable(int score, int ply) {
+		if (score > MATE_SCORE - MAX_PLY) {
+			return score - ply;
+		} else if (score < -MATE_SCORE + MAX_PLY) {
+			return score + ply;
+		}
+		return score;
+	}
+
+	/**
+	 * Looks up the current position in the endgame bitbases, if it is one of king and queen, rook or pawn against king.
+	 * A won position scores BITBASE_WIN_SCORE plus the static evaluation, so that the search still prefers the wins that
+	 * make progress, such as pushing the pawn.
 	 * 
-	 * @return a list of ChessMoves
+	 * @return the score of the position for the player to move, DRAW_SCORE if it is drawn, or NO_BITBASE_SCORE if no
+	 *         bitbase covers it
 	 */
-	private List<ChessMove> generateBlackMoves() {
-		List<ChessMove> moves = new ArrayList<ChessMove>();
+	private int probeBitbases() {
+		Bitbase[] tables = bitbases;
+		if (tables == null
+				|| chessGame.countPieces(ChessGame.WHITE_PLAYER) + chessGame.countPieces(ChessGame.BLACK_PLAYER) != 3) {
+			return NO_BITBASE_SCORE;
+		}
 
-		for (ChessPiece blackPiece : chessGame.blackPieces) {
-			if (!blackPiece.isCaptured) {
-				moves.addAll(generateMoves(blackPiece, ChessGame.BLACK_PLAYER));
+		// The strong side is the one with a piece besides its king.
+		int strongSide = (chessGame.countPieces(ChessGame.WHITE_PLAYER) == 2) ? ChessGame.WHITE_PLAYER
+				: ChessGame.BLACK_PLAYER;
+		int[] counts = chessGame.pieceCounts[strongSide];
+		for (int piece : BITBASE_PIECES) {
+			if (counts[piece] == 1 && tables[piece] != null) {
+				int player = chessGame.getSideToMove();
+				boolean win = tables[piece].isWin(chessGame.pieceSquares[strongSide][ChessPiece.KING][0],
+						chessGame.pieceSquares[strongSide][piece][0],
+						chessGame.pieceSquares[strongSide ^ 1][ChessPiece.KING][0], strongSide, player);
+				if (!win) {
+					return DRAW_SCORE;
+				}
+				int score = evaluate(chessGame);
+				return (player == strongSide) ? BITBASE_WIN_SCORE + score : -BITBASE_WIN_SCORE + score;
 			}
 		}
-
-		return moves;
+		return NO_BITBASE_SCORE;
 	}
 
 	/**
-	 * Generates all psuedo-legal moves for the specified player's piece.  A psuedo-legal move is a move that possibly 
-	 * results in leaving the specified player's king in check.
-	 *
-	 * @param aPiece
-	 * @param player
-	 * @return
+	 * Returns the difference between the material plus piece-square scores of the player to move and the opponent.
+	 * Both scores are maintained incrementally by the game, so evaluation is a constant-time blend of the middlegame
+	 * and endgame terms weighted by how much non-pawn material is left.
+	 * 
+	 * @param aGame a ChessGame
+	 * @return an integer, positive when the player to move is ahead
 	 */
-	List<ChessMove> generateMoves(ChessPiece aPiece, int player) {
+	private int evaluate(ChessGame aGame) {
 
-		List<ChessMove> moves = null;
+		int player = aGame.sideToMove;
+		int midgame = aGame.midgameScore[player] - aGame.midgameScore[player ^ 1];
+		int endgame = aGame.endgameScore[player] - aGame.endgameScore[player ^ 1];
 
-		int[][] deltas = null;
+		// Promotions can push the phase past its starting value.
+		int phase = Math.min(aGame.phase, TOTAL_PHASE);
 
-		if (player == ChessGame.BLACK_PLAYER) {
-			deltas = ChessSearch.BLACK_PIECE_DELTAS;
-		} else {
-			deltas = ChessSearch.WHITE_PIECE_DELTAS;
-		}
+		return (midgame * phase + endgame * (TOTAL_PHASE - phase)) / TOTAL_PHASE;
+	}
 
-		switch (aPiece.value) {
+	/**
+	 * Determines whether the specified king is in check.
+	 * 
+	 * @param aKing a ChessPiece
+	 * @return true if an enemy piece attacks the king's square
+	 */
+	private boolean isChecked(ChessPiece aKing) {
+		return isAttacked(aKing);
+	}
 
-		case ChessPiece.PAWN:
-			moves = doGeneratePawnMoves(aPiece, deltas[ChessPiece.PAWN]);
-			break;
-		case ChessPiece.KNIGHT:
-			moves = doGenerateMoves(aPiece, deltas[ChessPiece.KNIGHT]);
-			break;
-		case ChessPiece.KING:
-			moves = doGenerateMoves(aPiece, deltas[ChessPiece.KING]);
-			break;
-		case ChessPiece.BISHOP:
-			moves = doGenerateMovesSliding(aPiece, deltas[ChessPiece.BISHOP]);
-			break;
-		case ChessPiece.ROOK:
-			moves = doGenerateMovesSliding(aPiece, deltas[ChessPiece.ROOK]);
-			break;
-		case ChessPiece.QUEEN:
-			moves = doGenerateMovesSliding(aPiece, deltas[ChessPiece.QUEEN]);
-			break;
+	/**
+	 * Determines whether the specified player's king is in check. A player without a king (possible on hand-built
+	 * boards) is never in check.
+	 * 
+	 * @param player the player whose king is tested
+	 * @return true if an enemy piece attacks the player's king
+	 */
+	private boolean isInCheck(int player) {
+		if (chessGame.pieceCounts[player][ChessPiece.KING] == 0) {
+			return false;
 		}
+		return isChecked(chessGame.theBoard[chessGame.pieceSquares[player][ChessPiece.KING][0]]);
+	}
+
+	/**
+	 * Determines whether the specified player has any piece other than pawns and the king.
+	 * 
+	 * @param player WHITE_PLAYER or BLACK_PLAYER
+	 * @return true if the player has a knight, bishop, rook or queen
+	 */
+	private boolean hasNonPawnMaterial(int player) {
+		int[] counts = chessGame.pieceCounts[player];
+		return counts[ChessPiece.KNIGHT] + counts[ChessPiece.BISHOP] + counts[ChessPiece.ROOK] + counts[ChessPiece.QUEEN] > 0;
+	}
+
+	/**
+	 * Generates all possible moves available to white given the current state.
+	 * 
+	 * @param moves the array to which the moves are written
+	 * @return the number of moves generated
+	 */
+	protected int generateWhiteMoves(int[] moves) {
+		return generatePlayerMoves(ChessGame.WHITE_PLAYER, moves);
+	}
+
+	/**
+	 * Generates all possible moves to black given the current state.
+	 * 
+	 * @param moves the array to which the moves are written
+	 * @return the number of moves generated
+	 */
+	private int generateBlackMoves(int[] moves) {
+		return generatePlayerMoves(ChessGame.BLACK_PLAYER, moves);
+	}
+
+	/**
+	 * Generates the moves available to the specified player with the selected generator, adds castling and, unless
+	 * useLegalMoves is false, removes every move that would leave the player's king in check.
+	 * 
+	 * @param player the player to move
+	 * @param moves the array to which the moves are written
+	 * @return the number of moves generated
+	 */
+	int generatePlayerMoves(int player, int[] moves) {
+		return generatePlayerMoves(player, moves, GENERATE_ALL);
+	}
 
-		return moves;
+	/**
+	 * Generates only the captures (including en passant) and promotions available to the specified player, as
+	 * searched by the quiescence search.
+	 * 
+	 * @param player the player to move
+	 * @param moves the array to which the moves are written
+	 * @return the number of moves generated
+	 */
+	int generateCaptures(int player, int[] moves) {
+		return generatePlayerMoves(player, moves, GENERATE_CAPTURES);
 	}
 
 	/**
-	 * Generates all possible moves for the specified chess piece.
-	 *
-	 * @param aPiece a non-sliding ChessPiece
-	 * @return a List of chess moves specified in algebraic notation
+	 * Generates only the quiet moves (neither captures nor promotions, but including castling) available to the
+	 * specified player, which the staged move picker asks for once the captures have failed to cut the node off.
+	 * 
+	 * @param player the player to move
+	 * @param moves the array to which the moves are written
+	 * @return the number of moves generated
+	 */
+	int generateQuietMoves(int player, int[] moves) {
+		return generatePlayerMoves(player, moves, GENERATE_QUIETS);
+	}
+
+	/**
+	 * Generates every move, only the captures and promotions, or only the quiet moves available to the specified
+	 * player.
+	 */
+	private int generatePlayerMoves(int player, int[] moves, int kind) {
+		int count;
+
+		if (useBitboards) {
+			count = generateMovesBitboard(player, moves, kind);
+		} else {
+			count = generatePieceListMoves(player, moves);
+			// The 0x88 generator always generates everything, so drop the moves not asked for afterwards.
+			if (kind != GENERATE_ALL) {
+				count = keepMoves(moves, count, kind == GENERATE_QUIETS);
+			}
+		}
+
+		if (kind != GENERATE_CAPTURES) {
+			count = generateCastlingMoves(player, moves, count);
+		}
+
+		if (useLegalMoves) {
+			count = filterLegalMoves(player, moves, count);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Keeps either only the quiet moves or only the captures and promotions in the list, keeping their order.
+	 */
+	private static int keepMoves(int[] moves, int count, boolean quiet) {
+		int nKept = 0;
+		for (int i = 0; i < count; i+=1) {
+			if (MoveOrdering.isQuiet(moves[i]) == quiet) {
+				moves[nKept++] = moves[i];
+			}
+		}
+		return nKept;
+	}
+
+	/**
+	 * Generates the castling moves available to the specified player. The king may not castle out of, through or into
+	 * check, so castling moves are always legal.
+	 * 
+	 * @param player the player to move
+	 * @param moves the array to which the moves are written
+	 * @param count the number of moves already in the array
+	 * @return the number of moves in the array after generation
+	 */
+	private int generateCastlingMoves(int player, int[] moves, int count) {
+
+		int home = (player == ChessGame.WHITE_PLAYER) ? WHITE_KING_HOME : BLACK_KING_HOME;
+		int kingside = (player == ChessGame.WHITE_PLAYER) ? ChessGame.WHITE_KINGSIDE_CASTLING : ChessGame.BLACK_KINGSIDE_CASTLING;
+		int queenside = (player == ChessGame.WHITE_PLAYER) ? ChessGame.WHITE_QUEENSIDE_CASTLING : ChessGame.BLACK_QUEENSIDE_CASTLING;
+
+		// Does the player still have any right to castle, and is the king still at home?
+		if ((chessGame.castlingRights & (kingside | queenside)) == 0 || !isOwnPiece(home, ChessPiece.KING, player)) {
+			return count;
+		}
+
+		ChessPiece[] board = chessGame.theBoard;
+		int enemy = player ^ 1;
+
+		// The king may not castle out of check.
+		if (isSquareAttacked(home, enemy)) {
+			return count;
+		}
+
+		// Kingside: the two squares towards the h-file rook must be empty and not attacked.
+		if ((chessGame.castlingRights & kingside) != 0 && isOwnPiece(home + 3, ChessPiece.ROOK, player)
+				&& board[home + 1] == null && board[home + 2] == null
+				&& !isSquareAttacked(home + 1, enemy) && !isSquareAttacked(home + 2, enemy)) {
+			moves[count++] = Move.create(home, home + 2, ChessPiece.KING, 0, 0, Move.CASTLING);
+		}
+
+		// Queenside: the three squares towards the a-file rook must be empty, and the two the king crosses not attacked.
+		if ((chessGame.castlingRights & queenside) != 0 && isOwnPiece(home - 4, ChessPiece.ROOK, player)
+				&& board[home - 1] == null && board[home - 2] == null && board[home - 3] == null
+				&& !isSquareAttacked(home - 1, enemy) && !isSquareAttacked(home - 2, enemy)) {
+			moves[count++] = Move.create(home, home - 2, ChessPiece.KING, 0, 0, Move.CASTLING);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Determines whether a move remembered from another position, such as the hash move or a killer, is legal in the
+	 * current one. Only the moves of the piece on the move's source square are generated to find out.
+	 * 
+	 * @param move a packed move, or Move.NONE
+	 * @return true if the player to move could make exactly this move
+	 */
+	boolean isLegalMove(int move) {
+		if (move == Move.NONE) {
+			return false;
+		}
+
+		// The right piece must still stand on the source square.
+		int player = chessGame.getSideToMove();
+		ChessPiece aPiece = chessGame.theBoard[Move.from(move)];
+		if (aPiece == null || aPiece.owner != player || aPiece.value != Move.piece(move)) {
+			return false;
+		}
+
+		// Generate that piece's moves, which encode the board exactly as a full generation would.
+		int[] candidates = pieceMoves;
+		int count;
+		if (Move.isCastling(move)) {
+			count = generateCastlingMoves(player, candidates, 0);
+		} else {
+			count = generateMoves(aPiece, player, candidates, 0);
+		}
+		if (useLegalMoves) {
+			count = filterLegalMoves(player, candidates, count);
+		}
+
+		for (int i = 0; i < count; i+=1) {
+			if (candidates[i] == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Determines whether the specified square holds a piece of the specified type belonging to the specified player.
+	 */
+	private boolean isOwnPiece(int square, int value, int player) {
+		ChessPiece aPiece = chessGame.theBoard[square];
+		return aPiece != null && aPiece.value == value && aPiece.owner == player;
+	}
+
+	/**
+	 * Removes every psuedo-legal move that would leave the specified player's king in check. The pieces giving check
+	 * and the pieces pinned against the king are found once for the whole list, so only king moves and en passant
+	 * captures need anything more than a table lookup.
+	 * 
+	 * @param player the player to move
+	 * @param moves the psuedo-legal moves, compacted in place
+	 * @param count the number of psuedo-legal moves
+	 * @return the number of legal moves
+	 */
+	private int filterLegalMoves(int player, int[] moves, int count) {
+
+		// Hand-built boards may not have a king to protect.
+		if (chessGame.pieceCounts[player][ChessPiece.KING] == 0) {
+			return count;
+		}
+
+		int king = chessGame.pieceSquares[player][ChessPiece.KING][0];
+		ChessPiece aKing = chessGame.theBoard[king];
+		int nCheckers = findChecksAndPins(player, king);
+		int enemy = player ^ 1;
+
+		int nLegal = 0;
+		for (int i = 0; i < count; i+=1) {
+			int move = moves[i];
+			int source = Move.from(move);
+			int target = Move.to(move);
+			boolean isLegal;
+
+			if (source == king) {
+				// Castling was verified when it was generated; other king moves need a safe target square once the
+				// king is no longer there to block a slider's line through it.
+				if (Move.isCastling(move)) {
+					isLegal = true;
+				} else if (useBitboards) {
+					long occupied = chessGame.getOccupied() & ~(1L << Bitboards.toBitIndex(king));
+					isLegal = !Bitboards.isSquareAttacked(chessGame, Bitboards.toBitIndex(target), enemy, occupied);
+				} else {
+					chessGame.theBoard[king] = null;
+					isLegal = !isSquareAttacked(target, enemy);
+					chessGame.theBoard[king] = aKing;
+				}
+			} else if (nCheckers > 1) {
+				// Only the king can answer a double check.
+				isLegal = false;
+			} else if (Move.isEnPassant(move)) {
+				// En passant removes two pieces from one rank, which the pin test cannot see; try it instead.
+				chessGame.doMove(move);
+				isLegal = !isSquareAttacked(king, enemy);
+				chessGame.undoMove(move);
+			} else {
+				// A pinned piece may only move along the line between its king and the pinning piece.
+				isLegal = pinStamps[source] != stamp || ATTACK_DELTAS[target - king + ATTACK_TABLE_OFFSET] == pinDeltas[source];
+				// In check, the move must capture the checking piece or block its line.
+				if (isLegal && nCheckers == 1) {
+					isLegal = evasionStamps[target] == stamp;
+				}
+			}
+
+			if (isLegal) {
+				moves[nLegal++] = move;
+			}
+		}
+
+		return nLegal;
+	}
+
+	/**
+	 * Finds the enemy pieces giving check to the specified player's king and the player's pieces pinned against it.
+	 * Pinned pieces are stamped in pinStamps with the direction of the pin in pinDeltas. When there is exactly one
+	 * checker, the squares that capture it or block its line are stamped in evasionStamps.
+	 * 
+	 * @param player the player to move
+	 * @param king the player's king square
+	 * @return the number of pieces giving check
+	 */
+	private int findChecksAndPins(int player, int king) {
+
+		ChessPiece[] board = chessGame.theBoard;
+		int enemy = player ^ 1;
+		int nCheckers = 0;
+		int checker = ChessGame.NO_SQUARE;
+		int checkDelta = 0;
+
+		// Start a new generation of stamps, so that nothing needs to be cleared between nodes.
+		stamp++;
+
+		// Walk each line away from the king, looking past the first friendly piece for a pinning slider.
+		for (int delta : WHITE_PIECE_DELTAS[ChessPiece.QUEEN]) {
+			int slider = (delta == 15 || delta == 17 || delta == -15 || delta == -17) ? ChessPiece.BISHOP : ChessPiece.ROOK;
+			int shielded = ChessGame.NO_SQUARE;
+
+			for (int current = king + delta; (current & 0x88) == 0; current += delta) {
+				ChessPiece aPiece = board[current];
+				if (aPiece == null) {
+					continue;
+				}
+				if (aPiece.owner == player) {
+					// A second friendly piece on the line means nothing can be pinned along it.
+					if (shielded != ChessGame.NO_SQUARE) {
+						break;
+					}
+					shielded = current;
+					continue;
+				}
+				if (aPiece.value == slider || aPiece.value == ChessPiece.QUEEN) {
+					if (shielded == ChessGame.NO_SQUARE) {
+						nCheckers++;
+						checker = current;
+						checkDelta = delta;
+					} else {
+						pinStamps[shielded] = stamp;
+						pinDeltas[shielded] = delta;
+					}
+				}
+				break;
+			}
+		}
+
+		// Knights and pawns cannot be blocked, and never pin.
+		for (int delta : WHITE_PIECE_DELTAS[ChessPiece.KNIGHT]) {
+			int current = king + delta;
+			if ((current & 0x88) == 0 && isOwnPiece(current, ChessPiece.KNIGHT, enemy)) {
+				nCheckers++;
+				checker = current;
+				checkDelta = 0;
+			}
+		}
+		int[] pawnDeltas = (player == ChessGame.WHITE_PLAYER) ? WHITE_PIECE_DELTAS[ChessPiece.PAWN] : BLACK_PIECE_DELTAS[ChessPiece.PAWN];
+		for (int i = 1; i <= 2; i+=1) {
+			int current = king + pawnDeltas[i];
+			if ((current & 0x88) == 0 && isOwnPiece(current, ChessPiece.PAWN, enemy)) {
+				nCheckers++;
+				checker = current;
+				checkDelta = 0;
+			}
+		}
+
+		// A single check is answered by capturing the checker or, for a slider, by blocking the squares in between.
+		if (nCheckers == 1) {
+			evasionStamps[checker] = stamp;
+			if (checkDelta != 0) {
+				for (int current = king + checkDelta; current != checker; current += checkDelta) {
+					evasionStamps[current] = stamp;
+				}
+			}
+		}
+
+		return nCheckers;
+	}
+
+	/**
+	 * Generates all psuedo-legal moves for the specified player by walking the 0x88 board from each square in the
+	 * game's piece lists, so captured pieces are never visited.
+	 * 
+	 * @param player the player to move
+	 * @param moves the array to which the moves are written
+	 * @return the number of moves generated
+	 */
+	private int generatePieceListMoves(int player, int[] moves) {
+		int count = 0;
+
+		for (int value = 0; value < ChessPiece.PIECE_SYMBOLS.length; value+=1) {
+			int[] squares = chessGame.pieceSquares[player][value];
+			for (int i = 0; i < chessGame.pieceCounts[player][value]; i+=1) {
+				count = generateMoves(chessGame.theBoard[squares[i]], player, moves, count);
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Generates all psuedo-legal moves for the specified player's piece.  A psuedo-legal move is a move that possibly 
+	 * results in leaving the specified player's king in check.
+	 *
+	 * @param aPiece
+	 * @param player
+	 * @param moves the array to which the moves are written
+	 * @param count the number of moves already in the array
+	 * @return the number of moves in the array after generation
+	 */
+	int generateMoves(ChessPiece aPiece, int player, int[] moves, int count) {
+
+		int[][] deltas = null;
+
+		if (player == ChessGame.BLACK_PLAYER) {
+			deltas = ChessSearch.BLACK_PIECE_DELTAS;
+		} else {
+			deltas = ChessSearch.WHITE_PIECE_DELTAS;
+		}
+
+		switch (aPiece.value) {
+
+		case ChessPiece.PAWN:
+			count = doGeneratePawnMoves(aPiece, deltas[ChessPiece.PAWN], moves, count);
+			break;
+		case ChessPiece.KNIGHT:
+			count = doGenerateMoves(aPiece, deltas[ChessPiece.KNIGHT], moves, count);
+			break;
+		case ChessPiece.KING:
+			count = doGenerateMoves(aPiece, deltas[ChessPiece.KING], moves, count);
+			break;
+		case ChessPiece.BISHOP:
+			count = doGenerateMovesSliding(aPiece, deltas[ChessPiece.BISHOP], moves, count);
+			break;
+		case ChessPiece.ROOK:
+			count = doGenerateMovesSliding(aPiece, deltas[ChessPiece.ROOK], moves, count);
+			break;
+		case ChessPiece.QUEEN:
+			count = doGenerateMovesSliding(aPiece, deltas[ChessPiece.QUEEN], moves, count);
+			break;
+		}
+
+		return count;
+	}
+
+	/**
+	 * Generates all possible moves for the specified chess piece.
+	 *
+	 * @param aPiece a non-sliding ChessPiece
+	 * @return the number of moves in the array after generation
+	 */
+	private int doGenerateMoves(ChessPiece aPiece, int[] deltas, int[] moves, int count) {
+
+		for (int delta: deltas) {
+			// Move the piece to the square represented by delta.
+			int currentIndex = aPiece.location + delta;
+			// If the square is on the board...
+			if ((currentIndex & 0x88) == 0) {
+				// Get the piece at the current square.
+				ChessPiece piece = chessGame.theBoard[currentIndex];
+				// Is this square empty?
+				if (piece == null) {
+					// Its an empty square so this move is valid.
+					moves[count++] = Move.create(aPiece.location, currentIndex, aPiece.value, 0, 0, 0);
+				} else if (piece.owner != aPiece.owner) {
+					// The square is occupied by an enemy piece so this move is valid.
+					moves[count++] = Move.create(aPiece.location, currentIndex, aPiece.value, piece.value, 0, Move.CAPTURE);
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Generates all possible moves for the specified chess piece.
+	 *
+	 * @param aPiece a sliding ChessPiece
+	 * @return the number of moves in the array after generation
+	 */
+	private int doGenerateMovesSliding(ChessPiece aPiece, int[] deltas, int[] moves, int count) {
+
+		// For every possible direction in which this piece can move...
+		for (int delta : deltas) {
+			// Reset the piece to its starting location.
+			int currentIndex = aPiece.location;
+			// Move the piece one square in the current direction
+			currentIndex += delta;
+			// Indicates whether this piece is blocked.
+			boolean isBlocked = false;
+			// Slide the piece until it is off the board or until another piece is encountered.
+			while ((currentIndex & 0x88) == 0 && !isBlocked) {
+				// Get the piece at the current square.
+				ChessPiece piece = chessGame.theBoard[currentIndex];
+				// Is this square empty?
+				if (piece == null) {
+					// Its an empty square so this move is valid.
+					moves[count++] = Move.create(aPiece.location, currentIndex, aPiece.value, 0, 0, 0);
+				} else { // We encountered another piece.
+					// Check if we can capture the piece.
+					if (piece.owner != aPiece.owner) {
+						// The square is occupied by an enemy piece so this move is valid.
+						moves[count++] = Move.create(aPiece.location, currentIndex, aPiece.value, piece.value, 0, Move.CAPTURE);
+					}
+					// Stop moving.
+					isBlocked = true;
+				}
+				// Move the piece one square in the current direction
+				currentIndex += delta;
+			}
+		}
+		return count;
+	}
+
+	private int doGeneratePawnMoves(ChessPiece aPawn, int[] deltas, int[] moves, int count) {
+
+		int startIndex = aPawn.location;
+
+		// Can we move the pawn forward one square?
+		int upOne = startIndex + deltas[0];
+
+		if (((upOne & 0x88) == 0) && chessGame.theBoard[upOne] == null) {
+			count = addPawnMove(startIndex, upOne, 0, 0, deltas[0], moves, count);
+		}
+
+		// Check for attack moves...
+		ChessPiece toAttack = null;
+
+		// Can the pawn attack left?
+		int attackLeft = startIndex + deltas[1];
+		if (((attackLeft & 0x88) == 0)) {
+			// Is there an enemy piece to attack?
+			toAttack = chessGame.theBoard[attackLeft];	
+			if (toAttack != null && toAttack.owner != aPawn.owner) {
+				count = addPawnMove(startIndex, attackLeft, toAttack.value, Move.CAPTURE, deltas[0], moves, count);
+			} else if (attackLeft == chessGame.enPassantSquare) {
+				count = addEnPassantMove(aPawn, attackLeft, moves, count);
+			}
+		}
+
+		// Can the pawn attack right?
+		int attackRight = startIndex + deltas[2];		
+		if ((attackRight& 0x88) == 0) {
+			toAttack = chessGame.theBoard[attackRight];
+			if (toAttack != null && toAttack.owner != aPawn.owner) {
+				count = addPawnMove(startIndex, attackRight, toAttack.value, Move.CAPTURE, deltas[0], moves, count);
+			} else if (attackRight == chessGame.enPassantSquare) {
+				count = addEnPassantMove(aPawn, attackRight, moves, count);
+			}
+		}
+
+		// Can the pawn move forward two squares?  Only from its starting rank, two steps back from which is off the board.
+		int doubleMove = startIndex + deltas[3];
+		if ( ((doubleMove & 0x88) == 0) && 
+				chessGame.theBoard[upOne] == null &&
+				chessGame.theBoard[doubleMove] == null &&
+				((startIndex - deltas[3]) & 0x88) != 0) {
+			moves[count++] = Move.create(startIndex, doubleMove, ChessPiece.PAWN, 0, 0, Move.DOUBLE_PUSH);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Adds an en passant capture onto the specified (empty) square, provided the pawn that just double-stepped past it
+	 * belongs to the enemy.
+	 */
+	private int addEnPassantMove(ChessPiece aPawn, int target, int[] moves, int count) {
+		// The captured pawn stands beside the attacker, on the attacker's rank.
+		int capturedSquare = (aPawn.location & 0x70) | (target & 0x07);
+		if (isOwnPiece(capturedSquare, ChessPiece.PAWN, aPawn.owner ^ 1)) {
+			moves[count++] = Move.create(aPawn.location, target, ChessPiece.PAWN, ChessPiece.PAWN, 0, Move.CAPTURE | Move.EN_PASSANT);
+		}
+		return count;
+	}
+
+	/**
+	 * Adds a single-step pawn move or, if it lands on the last rank, one promotion to each piece in PROMOTION_PIECES.
+	 */
+	private static int addPawnMove(int source, int target, int captured, int flags, int forward, int[] moves, int count) {
+		// Check if moving the piece forward one more square would move it off the board.
+		if (((target + forward) & 0x88) != 0) {
+			for (int promotion : PROMOTION_PIECES) {
+				moves[count++] = Move.create(source, target, ChessPiece.PAWN, captured, promotion, flags | Move.PROMOTION);
+			}
+		} else {
+			moves[count++] = Move.create(source, target, ChessPiece.PAWN, captured, 0, flags);
+		}
+		return count;
+	}
+
+	/**
+	 * Generates all psuedo-legal moves for the specified player using the game's bitboards rather than walking the
+	 * 0x88 board one square at a time.
+	 * 
+	 * @param player the player to move
+	 * @param moves the array to which the moves are written
+	 * @param kind GENERATE_ALL, GENERATE_CAPTURES (captures and promotions) or GENERATE_QUIETS (everything else)
+	 * @return the number of moves generated
+	 */
+	private int generateMovesBitboard(int player, int[] moves, int kind) {
+		int count = 0;
+
+		long[] pieces = chessGame.pieceBitboards[player];
+		long own = chessGame.colourBitboards[player];
+		long enemy = chessGame.colourBitboards[player ^ 1];
+		long occupied = own | enemy;
+		long targetMask = (kind == GENERATE_CAPTURES) ? enemy : (kind == GENERATE_QUIETS) ? ~occupied : ~own;
+
+		// Pawns are generated set-wise by shifting the whole pawn bitboard.
+		count = doGeneratePawnMovesBitboard(player, pieces[ChessPiece.PAWN], enemy, ~occupied, kind, moves, count);
+
+		// Every other piece looks up its attack set and keeps the squares it may move to.
+		for (long knights = pieces[ChessPiece.KNIGHT]; knights != 0; knights &= knights - 1) {
+			int from = Long.numberOfTrailingZeros(knights);
+			count = addMovesBitboard(ChessPiece.KNIGHT, from, Bitboards.KNIGHT_ATTACKS[from] & targetMask, moves, count);
+		}
+		for (long bishops = pieces[ChessPiece.BISHOP]; bishops != 0; bishops &= bishops - 1) {
+			int from = Long.numberOfTrailingZeros(bishops);
+			count = addMovesBitboard(ChessPiece.BISHOP, from, Bitboards.bishopAttacks(from, occupied) & targetMask, moves, count);
+		}
+		for (long rooks = pieces[ChessPiece.ROOK]; rooks != 0; rooks &= rooks - 1) {
+			int from = Long.numberOfTrailingZeros(rooks);
+			count = addMovesBitboard(ChessPiece.ROOK, from, Bitboards.rookAttacks(from, occupied) & targetMask, moves, count);
+		}
+		for (long queens = pieces[ChessPiece.QUEEN]; queens != 0; queens &= queens - 1) {
+			int from = Long.numberOfTrailingZeros(queens);
+			count = addMovesBitboard(ChessPiece.QUEEN, from, Bitboards.queenAttacks(from, occupied) & targetMask, moves, count);
+		}
+		for (long kings = pieces[ChessPiece.KING]; kings != 0; kings &= kings - 1) {
+			int from = Long.numberOfTrailingZeros(kings);
+			count = addMovesBitboard(ChessPiece.KING, from, Bitboards.KING_ATTACKS[from] & targetMask, moves, count);
+		}
+
+		return count;
+	}
+
+	/**
+	 * Adds a move from the specified square to each square in the target set.
+	 */
+	private int addMovesBitboard(int value, int from, long targets, int[] moves, int count) {
+		int source = Bitboards.toSquare(from);
+		for (; targets != 0; targets &= targets - 1) {
+			int target = Bitboards.toSquare(Long.numberOfTrailingZeros(targets));
+			ChessPiece toCapture = chessGame.theBoard[target];
+			if (toCapture == null) {
+				moves[count++] = Move.create(source, target, value, 0, 0, 0);
+			} else {
+				moves[count++] = Move.create(source, target, value, toCapture.value, 0, Move.CAPTURE);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Generates every pawn push, double push, capture, en passant capture and promotion for the specified player at
+	 * once. GENERATE_CAPTURES leaves out every push but promotions, and GENERATE_QUIETS leaves out captures and
+	 * promotions.
+	 */
+	private int doGeneratePawnMovesBitboard(int player, long pawns, long enemy, long empty, int kind,
+			int[] moves, int count) {
+		long singlePushes, doublePushes, attacksWest, attacksEast;
+		int forward;
+
+		if (player == ChessGame.WHITE_PLAYER) {
+			forward = 8;
+			singlePushes = (pawns << 8) & empty;
+			doublePushes = ((singlePushes & Bitboards.RANK_3) << 8) & empty;
+			attacksWest = ((pawns & ~Bitboards.FILE_A) << 7) & enemy;
+			attacksEast = ((pawns & ~Bitboards.FILE_H) << 9) & enemy;
+		} else {
+			forward = -8;
+			singlePushes = (pawns >>> 8) & empty;
+			doublePushes = ((singlePushes & Bitboards.RANK_6) >>> 8) & empty;
+			attacksWest = ((pawns & ~Bitboards.FILE_A) >>> 9) & enemy;
+			attacksEast = ((pawns & ~Bitboards.FILE_H) >>> 7) & enemy;
+		}
+
+		if (kind == GENERATE_CAPTURES) {
+			singlePushes &= Bitboards.RANK_1 | Bitboards.RANK_8;
+			doublePushes = 0;
+		} else if (kind == GENERATE_QUIETS) {
+			singlePushes &= ~(Bitboards.RANK_1 | Bitboards.RANK_8);
+			attacksWest = 0;
+			attacksEast = 0;
+		}
+
+		count = addPawnMovesBitboard(singlePushes, forward, 0, moves, count);
+		count = addPawnMovesBitboard(doublePushes, 2 * forward, Move.DOUBLE_PUSH, moves, count);
+		count = addPawnMovesBitboard(attacksWest, forward - 1, Move.CAPTURE, moves, count);
+		count = addPawnMovesBitboard(attacksEast, forward + 1, Move.CAPTURE, moves, count);
+
+		// En passant: our pawns standing where an enemy pawn on the en passant square would attack.
+		if (kind != GENERATE_QUIETS && chessGame.enPassantSquare != ChessGame.NO_SQUARE) {
+			int epBit = Bitboards.toBitIndex(chessGame.enPassantSquare);
+			if ((chessGame.pieceBitboards[player ^ 1][ChessPiece.PAWN] & (1L << (epBit - forward))) != 0) {
+				for (long attackers = Bitboards.PAWN_ATTACKS[player ^ 1][epBit] & pawns; attackers != 0; attackers &= attackers - 1) {
+					int source = Bitboards.toSquare(Long.numberOfTrailingZeros(attackers));
+					moves[count++] = Move.create(source, chessGame.enPassantSquare, ChessPiece.PAWN, ChessPiece.PAWN, 0,
+							Move.CAPTURE | Move.EN_PASSANT);
+				}
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * Adds a pawn move to each square in the target set, where shift is the distance (in bits) the pawn travelled.
+	 */
+	private int addPawnMovesBitboard(long targets, int shift, int flags, int[] moves, int count) {
+		for (; targets != 0; targets &= targets - 1) {
+			int to = Long.numberOfTrailingZeros(targets);
+			int source = Bitboards.toSquare(to - shift);
+			int target = Bitboards.toSquare(to);
+			int captured = ((flags & Move.CAPTURE) != 0) ? chessGame.theBoard[target].value : 0;
+			if (((1L << to) & (Bitboards.RANK_1 | Bitboards.RANK_8)) != 0) {
+				for (int promotion : PROMOTION_PIECES) {
+					moves[count++] = Move.create(source, target, ChessPiece.PAWN, captured, promotion, flags | Move.PROMOTION);
+				}
+			} else {
+				moves[count++] = Move.create(source, target, ChessPiece.PAWN, captured, 0, flags);
+			}
+		}
+		return count;
+	}
+
+	/**
+	 * Determines if the specified piece is vulnerable to attack.
+	 * 
+	 * @param aPiece a ChessPiece
+	 * 
+	 * @return true if this square can be attacked by an enemy piece.
+	 */
+	private boolean isAttacked(ChessPiece aPiece) {
+
+		// Check trivial cases.
+		if (aPiece == null || aPiece.isCaptured) {
+			return false;
+		}
+
+		return isSquareAttacked(aPiece.location, aPiece.owner ^ 1);
+	}
+
+	/**
+	 * Determines whether any piece belonging to the specified player attacks the specified square. With the bitboard
+	 * generator selected, the attack sets of the square are intersected with the attacker's bitboards. Otherwise each
+	 * candidate attacker is looked up in the 0x88 attack table and, for sliding pieces, the squares between are scanned
+	 * outward from the target towards the attacker.
+	 * 
+	 * @param square an index into the 0x88 board
+	 * @param byColour the attacking player
+	 * @return true if the square is attacked
+	 */
+	protected boolean isSquareAttacked(int square, int byColour) {
+		if (useBitboards) {
+			return Bitboards.isSquareAttacked(chessGame, Bitboards.toBitIndex(square), byColour);
+		}
+
+		// For each of the attacker's pieces still on the board.
+		for (int value = 0; value < ChessPiece.PIECE_SYMBOLS.length; value+=1) {
+			int[] squares = chessGame.pieceSquares[byColour][value];
+			for (int i = 0; i < chessGame.pieceCounts[byColour][value]; i+=1) {
+				if (canAttack(squares[i], value, byColour, square)) {
+					return true;
+				}
+			}
+		}
+
+		return false;
+	}
+
+	/**
+	 * Determines if a piece of the specified type and owner standing on the source square attacks the target square.
+	 * 
+	 * @param source the attacker's square
+	 * @param value the attacker's piece value
+	 * @param owner the attacker's owner
+	 * @param target the square to be attacked
+	 * @return true if the attack is possible on the current board
+	 */
+	private boolean canAttack(int source, int value, int owner, int target) {
+
+		// Where is the attacker located relative to the square to be attacked?
+		int index = source - target + ATTACK_TABLE_OFFSET;
+
+		// Can this type of piece attack along that line at all?
+		if ((ATTACK_MASKS[index] & attackMask(value, owner)) == 0) {
+			return false;
+		}
+
+		// Pawns, knights and kings cannot be blocked.
+		if (value == ChessPiece.PAWN || value == ChessPiece.KNIGHT || value == ChessPiece.KING) {
+			return true;
+		}
+
+		// Scan outward from the target towards the attacker, stopping at the first piece.
+		int step = ATTACK_DELTAS[index];
+		int current = target + step;
+		while (current != source && chessGame.theBoard[current] == null) {
+			current += step;
+		}
+
+		return current == source;
+	}
+
+	/**
+	 * Estimates the material won (positive) or lost (negative) by the specified move by playing out every capture on
+	 * its target square, each side always recapturing with its least valuable attacker and either side free to stop
+	 * capturing when that suits it. No moves are made: pieces that have taken part are only marked as removed, which
+	 * also uncovers the sliders standing behind them (x-rays).
+	 * 
+	 * @param move a packed move generated for the current position
+	 * @return the expected material balance of the exchange for the player making the move
+	 */
+	public int staticExchange(int move) {
+
+		int from = Move.from(move);
+		int to = Move.to(move);
+		int player = chessGame.theBoard[from].owner;
+		int[] gain = seeGains;
+
+		// Start a new generation of removed squares.
+		seeStamp++;
+		seeStamps[from] = seeStamp;
+
+		// The first capture wins whatever stands on the target square (or the pawn passed by en passant).
+		gain[0] = Move.isCapture(move) ? MATERIAL_VALUES[Move.captured(move)] : 0;
+		if (Move.isEnPassant(move)) {
+			seeStamps[(from & 0x70) | (to & 0x07)] = seeStamp;
+		}
+
+		// The piece now standing on the target square, which the next capture wins.
+		int onSquare = Move.piece(move);
+		if (Move.isPromotion(move)) {
+			onSquare = Move.promotion(move);
+			gain[0] += MATERIAL_VALUES[onSquare] - MATERIAL_VALUES[ChessPiece.PAWN];
+		}
+
+		int depth = 0;
+		int side = player ^ 1;
+		while (depth + 1 < gain.length) {
+			int attacker = leastValuableAttacker(to, side);
+			if (attacker == ChessGame.NO_SQUARE) {
+				break;
+			}
+
+			// Speculatively capture; the side to move will not continue if it cannot gain either way.
+			depth++;
+			gain[depth] = MATERIAL_VALUES[onSquare] - gain[depth - 1];
+			if (Math.max(-gain[depth - 1], gain[depth]) < 0) {
+				// Neither standing pat nor capturing helps this side, so the capture is never made.
+				depth--;
+				break;
+			}
+
+			seeStamps[attacker] = seeStamp;
+			onSquare = chessGame.theBoard[attacker].value;
+			side ^= 1;
+		}
+
+		// Work back from the end of the sequence, letting each side stop capturing if that is better.
+		for (; depth > 0; depth--) {
+			gain[depth - 1] = -Math.max(-gain[depth - 1], gain[depth]);
+		}
+
+		return gain[0];
+	}
+
+	/**
+	 * Finds the least valuable piece belonging to the specified player that attacks the target square, ignoring the
+	 * pieces already used by the exchange in progress.
+	 * 
+	 * @param target the square where the exchange takes place
+	 * @param player the player to recapture
+	 * @return the attacker's square, or NO_SQUARE if there is none
+	 */
+	private int leastValuableAttacker(int target, int player) {
+		for (int value : SEE_ATTACKER_ORDER) {
+			int[] squares = chessGame.pieceSquares[player][value];
+			for (int i = 0; i < chessGame.pieceCounts[player][value]; i+=1) {
+				int source = squares[i];
+				if (seeStamps[source] != seeStamp && canAttackThrough(source, value, player, target)) {
+					return source;
+				}
+			}
+		}
+		return ChessGame.NO_SQUARE;
+	}
+
+	/**
+	 * Like canAttack, but treats the squares removed by the exchange in progress as empty.
+	 */
+	private boolean canAttackThrough(int source, int value, int owner, int target) {
+
+		int index = source - target + ATTACK_TABLE_OFFSET;
+		if ((ATTACK_MASKS[index] & attackMask(value, owner)) == 0) {
+			return false;
+		}
+		if (value == ChessPiece.PAWN || value == ChessPiece.KNIGHT || value == ChessPiece.KING) {
+			return true;
+		}
+
+		// Scan outward from the target, looking through pieces that have already been exchanged.
+		int step = ATTACK_DELTAS[index];
+		int current = target + step;
+		while (current != source && (chessGame.theBoard[current] == null || seeStamps[current] == seeStamp)) {
+			current += step;
+		}
+
+		return current == source;
+	}
+
+	/**
+	 * Returns the bit used in ATTACK_MASKS for the specified piece. Pawns attack in opposite directions for each
+	 * player, so each player's pawns get their own bit.
+	 */
+	private static int attackMask(int value, int owner) {
+		if (value == ChessPiece.PAWN) {
+			return (owner == ChessGame.WHITE_PLAYER) ? WHITE_PAWN_ATTACK : BLACK_PAWN_ATTACK;
+		}
+		return 1 << value;
+	}
+
+	/**
+	 * Selects the bitboard move generator (true) or the original 0x88 generator (false).
+	 */
+	protected boolean useBitboards = true;
+
+	/**
+	 * Extends the leaves of the search with a quiescence search (true) or evaluates them directly (false).
+	 */
+	protected boolean useQuiescence = true;
+
+	/**
+	 * Searches every evasion, rather than standing pat, when the quiescence search finds the player to move in check.
+	 */
+	protected boolean useCheckEvasions = true;
+
+	/**
+	 * Selects legal move generation (true) or the psuedo-legal moves of the underlying generator (false).
+	 */
+	protected boolean useLegalMoves = true;
+
+	/**
+	 * Starts each iteration with a narrow window around the previous iteration's score.
+	 */
+	protected boolean useAspirationWindows = true;
+
+	/**
+	 * The distance from the previous score to either end of the first aspiration window, doubled on each re-search.
+	 */
+	protected int aspirationWindow = 30;
+
+	/**
+	 * Lets the player to move pass, and prunes the node if a reduced search shows that passing still fails high.
+	 */
+	protected boolean useNullMovePruning = true;
+
+	/**
+	 * The minimum number of plies left for null-move pruning to be tried.
+	 */
+	protected int nullMoveMinDraft = 3;
+
+	/**
+	 * The number of plies by which the search after a null move is reduced (beyond the null move itself).
+	 */
+	protected int nullMoveReduction = 2;
+
+	/**
+	 * The reduction after a null move grows by one ply for every this many plies left.
+	 */
+	protected int nullMoveDepthDivisor = 6;
+
+	/**
+	 * Searches quiet moves ordered late to a reduced depth first.
+	 */
+	protected boolean useLateMoveReductions = true;
+
+	/**
+	 * The minimum number of plies left for late moves to be reduced.
+	 */
+	protected int lmrMinDraft = 3;
+
+	/**
+	 * The number of moves at each node that are always searched to full depth.
+	 */
+	protected int lmrFullDepthMoves = 3;
+
+	/**
+	 * Skips quiet moves near the leaves when the static evaluation is too far below alpha for them to matter.
+	 */
+	protected boolean useFutilityPruning = true;
+
+	/**
+	 * Returns at once near the leaves when the static evaluation is far enough above beta.
 	 */
-	private List<ChessMove> doGenerateMoves(ChessPiece aPiece, int[] deltas) {
-		List<ChessMove> moves = new ArrayList<ChessMove>();
-
-		for (int delta: deltas) {
-			// Move the piece to the square represented by delta.
-			int currentIndex = aPiece.location + delta;
-			// If the square is on the board...
-			if ((currentIndex & 0x88) == 0) {
-				// Get the piece at the current square.
-				ChessPiece piece = chessGame.theBoard[currentIndex];
-				// Is this square empty?
-				if (piece == null) {
-					// Its an empty square so this move is valid.
-					moves.add(new ChessMove(aPiece, aPiece.location, currentIndex, false, false));
-				} else if (piece.owner != aPiece.owner) {
-					// The square is occupied by an enemy piece so this move is valid.
-					moves.add(new ChessMove(aPiece, aPiece.location, currentIndex, true, false));
-				}
-			}
-		}
+	protected boolean useReverseFutilityPruning = true;
 
-		return moves;
-	}
+	/**
+	 * The maximum number of plies left for (reverse) futility pruning.
+	 */
+	protected int futilityMaxDraft = 3;
 
 	/**
-	 * Generates all possible moves for the specified chess piece.
-	 *
-	 * @param aPiece a sliding ChessPiece
-	 * @return a list of String representing chess moves in algebraic notation
+	 * The margin per ply left by which a quiet move is assumed able to raise the static evaluation.
 	 */
-	private List<ChessMove> doGenerateMovesSliding(ChessPiece aPiece, int[] deltas) {
+	protected int futilityMargin = 150;
 
-		List<ChessMove> moves = new ArrayList<ChessMove>();
-		// For every possible direction in which this piece can move...
-		for (int delta : deltas) {
-			// Reset the piece to its starting location.
-			int currentIndex = aPiece.location;
-			// Move the piece one square in the current direction
-			currentIndex += delta;
-			// Indicates whether this piece is blocked.
-			boolean isBlocked = false;
-			// Slide the piece until it is off the board or until another piece is encountered.
-			while ((currentIndex & 0x88) == 0 && !isBlocked) {
-				// Get the piece at the current square.
-				ChessPiece piece = chessGame.theBoard[currentIndex];
-				// Is this square empty?
-				if (piece == null) {
-					// Its an empty square so this move is valid.
-					moves.add(new ChessMove(aPiece, aPiece.location, currentIndex, false, false));
-				} else { // We encountered another piece.
-					// Check if we can capture the piece.
-					if (piece.owner != aPiece.owner) {
-						// The square is occupied by an enemy piece so this move is valid.
-						moves.add(new ChessMove(aPiece, aPiece.location, currentIndex, true, false));
-					}
-					// Stop moving.
-					isBlocked = true;
-				}
-				// Move the piece one square in the current direction
-				currentIndex += delta;
-			}
-		}
-		return moves;
-	}
+	/**
+	 * The margin per ply left by which the static evaluation must exceed beta for reverse futility pruning.
+	 */
+	protected int reverseFutilityMargin = 120;
 
-	private List<ChessMove> doGeneratePawnMoves(ChessPiece aPawn, int[] deltas) {
-		List<ChessMove> moves = new ArrayList<ChessMove>();
+	/**
+	 * The current generation of pinStamps and evasionStamps; a square is marked only if its stamp equals this.
+	 */
+	private int stamp = 0;
 
-		int startIndex = aPawn.location;
+	/**
+	 * Marks the squares of pieces pinned against their king.
+	 */
+	private final int[] pinStamps = new int[128];
 
-		// Can we move the pawn forward one square?
-		int upOne = startIndex + deltas[0];
+	/**
+	 * For each pinned piece, the direction from its king towards the piece.
+	 */
+	private final int[] pinDeltas = new int[128];
 
-		if (((upOne & 0x88) == 0) && chessGame.theBoard[upOne] == null) {
-			moves.add(new ChessMove(aPawn, aPawn.location, upOne, false, false));
-		}
+	/**
+	 * Marks the squares that capture a lone checking piece or block its line.
+	 */
+	private final int[] evasionStamps = new int[128];
 
-		// Check for attack moves...
-		ChessPiece toAttack = null;
+	/**
+	 * The current generation of seeStamps; a square is removed from the exchange in progress only if its stamp equals
+	 * this.
+	 */
+	private int seeStamp = 0;
 
-		// Can the pawn attack left?
-		int attackLeft = startIndex + deltas[1];
-		if (((attackLeft & 0x88) == 0)) {
-			// Is there an enemy piece to attack?
-			toAttack = chessGame.theBoard[attackLeft];	
-			if (toAttack != null && toAttack.owner != aPawn.owner) {
-				moves.add(new ChessMove(aPawn, aPawn.location, attackLeft, true, false));
-			}
-		}
+	/**
+	 * Marks the pieces that have already taken part in the exchange in progress.
+	 */
+	private final int[] seeStamps = new int[128];
 
-		// TODO: Can the pawn perform an en passant attack left?
+	/**
+	 * The running material balance after each capture of the exchange in progress.
+	 */
+	private final int[] seeGains = new int[32];
 
-		// Can the pawn attack right?
-		int attackRight = startIndex + deltas[2];		
-		if ((attackRight& 0x88) == 0) {
-			toAttack = chessGame.theBoard[attackRight];
-			if (toAttack != null && toAttack.owner != aPawn.owner) {
-				moves.add(new ChessMove(aPawn, aPawn.location, attackRight, true, false));
-			}
-		}
+	/**
+	 * The chess game on which the search is to be performed.
+	 */
+	private ChessGame chessGame = null;
 
-		// TODO: Can the pawn perform an en passant attack right?
+	/**
+	 * The table of earlier search results, possibly shared with other searches.
+	 */
+	private final TranspositionTable transpositionTable;
 
-		// Can the pawn move forward two squares?
-		int doubleMove = startIndex + deltas[3];
-		if ( ((doubleMove & 0x88) == 0) && 
-				chessGame.theBoard[doubleMove] == null &&
-				aPawn.nMoves == 0) {
-			moves.add(new ChessMove(aPawn, aPawn.location, doubleMove, false, false));
-		}
+	/**
+	 * The move buffers for each ply of the search, reused from node to node.
+	 */
+	private final MoveStack moveStack = new MoveStack(MAX_PLY);
 
-		// Check each move to see if it results in a promotion.
-		for (ChessMove move : moves) {
-			// Check if moving the piece forward one square would move it off the board.
-			if (((move.source + deltas[0]) & 0x88) != 0) {
-				move.isPromotion = true;
-			}
-		}
+	/**
+	 * Orders the moves at each node and keeps the killer, history and counter-move tables.
+	 */
+	private final MoveOrdering moveOrdering = new MoveOrdering(this);
 
-		return moves;
-	}
+	/**
+	 * The staged move picker of each ply.
+	 */
+	private final MovePicker[] movePickers = new MovePicker[MAX_PLY];
 
 	/**
-	 * Determines if the specified piece is vulnerable to attack.
-	 * 
-	 * @param location an index into the game board.
-	 * 
-	 * @return true if this square can be attacked by an enemy piece.
+	 * The quiet moves searched so far at each ply, whose history scores fall if a later move causes a cutoff.
 	 */
-	@SuppressWarnings("unused")
-	private boolean isAttacked(ChessPiece aPiece) {
+	private final int[][] quietsSearched = new int[MAX_PLY][MAX_MOVES];
 
-		// Check trivial cases.
-		if (aPiece == null || aPiece.isCaptured) {
-			return false;
-		}
+	/**
+	 * The moves of a single piece, generated to check that a remembered move is still legal.
+	 */
+	private final int[] pieceMoves = new int[MAX_MOVES];
 
-		// Where is this piece located on the board?
-		int pieceIndex = aPiece.location;
+	/**
+	 * The move made at each ply of the line currently being searched.
+	 */
+	private final int[] playedMoves = new int[MAX_PLY];
 
-		// Get all the opponent's pieces.
-		List<ChessPiece> attackers = new ArrayList<ChessPiece>();
-		if (aPiece.owner == ChessGame.BLACK_PLAYER) {
-			attackers = chessGame.whitePieces;
-		} else {
-			attackers = chessGame.blackPieces;
-		}
+	/**
+	 * The principal variation found below each ply; pvTable[ply] holds the line from ply to pvLength[ply].
+	 */
+	private final int[][] pvTable = new int[MAX_PLY][MAX_PLY];
 
-		// For each of the opponent's pieces.
-		for (ChessPiece attacker : attackers) {
-			// Check if this piece is still on the board.
-			if (!attacker.isCaptured) {
-				if (ChessSearch.canAttack(attacker, pieceIndex)) {
-					return true;
-				}
-			}
-		}
+	/**
+	 * The end of the principal variation of each ply.
+	 */
+	private final int[] pvLength = new int[MAX_PLY];
 
-		return false;
-	}
+	/**
+	 * The principal variation of the last completed iteration.
+	 */
+	private final int[] bestLine = new int[MAX_PLY];
 
 	/**
-	 * Determines if the specified piece can attack the specified index.
-	 * 
-	 * @param attacker a ChessPiece
-	 * @param pieceIndex an integer representing a location the board.
+	 * The number of moves in bestLine.
 	 */
-	private static boolean canAttack(ChessPiece attacker, int pieceIndex) {
+	private int bestLineLength = 0;
 
-		// Where is the attacker located relative to the square to be attacked?
-		//int delta = attacker.location - pieceIndex;
+	/**
+	 * The score of bestLine.
+	 */
+	private int bestLineScore = 0;
 
-		return true;
+	/**
+	 * The time this search started.
+	 */
+	private long startTime = 0;
 
-	}
+	/**
+	 * No new iteration is started after this time.
+	 */
+	private volatile long softDeadline = 0;
 
 	/**
-	 * The chess game on which the search is to be performed.
+	 * The search is aborted once this time has passed.
 	 */
-	private ChessGame chessGame = null;
+	private volatile long hardDeadline = 0;
 
 	/**
-	 * The best move seen by max thus far.
+	 * Set when the search must stop immediately; every node returns at once and the iteration is discarded.
 	 */
-	private ChessMove globalMax = null;
+	private volatile boolean aborted = false;
 
 	/**
-	 * The best move seen by min thus far.
+	 * Indicates a Lazy SMP helper, which searches until it is stopped and whose result is ignored.
 	 */
-	private ChessMove globalMin = null;
+	private boolean isHelper = false;
 
 	/**
-	 * Represents the maximum search depth.
+	 * The number of nodes visited by this search.
 	 */
-	private int depthLimit = -1;
+	private long nodes = 0;
 
 	/**
-	 * The time this search started.
+	 * The score of the root position from the last iteration.
 	 */
-	private long startTime = 0;
+	private int rootScore = 0;
 
 	/**
-	 * Represents the alloted search time.
+	 * Whether the root position is itself covered by the bitbases.
 	 */
-	private long timeLimit = -1;
+	private boolean rootInBitbase = false;
 
 
 	/**
@@ -676,5 +2104,220 @@ public class ChessSearch {
 	};
 
 
+	/**
+	 * Used in the endgame, when the king should head for the centre rather than hide.
+	 */
+	public static final int[] KING_ENDGAME_VALUES = {
+		-50,-40,-30,-20,-20,-30,-40,-50, 0, 0, 0, 0, 0, 0, 0, 0,
+		-30,-20,-10,  0,  0,-10,-20,-30, 0, 0, 0, 0, 0, 0, 0, 0,
+		-30,-10, 20, 30, 30, 20,-10,-30, 0, 0, 0, 0, 0, 0, 0, 0,
+		-30,-10, 30, 40, 40, 30,-10,-30, 0, 0, 0, 0, 0, 0, 0, 0,
+		-30,-10, 30, 40, 40, 30,-10,-30, 0, 0, 0, 0, 0, 0, 0, 0,
+		-30,-10, 20, 30, 30, 20,-10,-30, 0, 0, 0, 0, 0, 0, 0, 0,
+		-30,-30,  0,  0,  0,  0,-30,-30, 0, 0, 0, 0, 0, 0, 0, 0,
+		-50,-30,-30,-30,-30,-30,-30,-50, 0, 0, 0, 0, 0, 0, 0, 0
+	};
+
+	/**
+	 * How much each piece contributes to the game phase (pawn, knight, king, bishop, rook, queen).
+	 */
+	public static final int[] PHASE_WEIGHTS = { 0, 1, 0, 1, 2, 4 };
+
+	/**
+	 * The game phase at the start of the game.
+	 */
+	public static final int TOTAL_PHASE = 24;
+
+	/**
+	 * Material plus middlegame piece-square value, indexed by owner, piece value and square on the 0x88 board. The
+	 * POSITION_VALUES tables are written from white's point of view with the eighth rank first, so white's squares are
+	 * mirrored vertically to look them up and black's are used as is.
+	 */
+	public static final int[][][] MIDGAME_PIECE_SQUARE = new int[2][MATERIAL_VALUES.length][128];
+
+	/**
+	 * Material plus endgame piece-square value, indexed by owner, piece value and square on the 0x88 board.
+	 */
+	public static final int[][][] ENDGAME_PIECE_SQUARE = new int[2][MATERIAL_VALUES.length][128];
+
+	static {
+		for (int value = 0; value < MATERIAL_VALUES.length; value+=1) {
+			int[] endgameValues = (value == ChessPiece.KING) ? KING_ENDGAME_VALUES : POSITION_VALUES[value];
+			for (int square = 0; square < 128; square+=1) {
+				if ((square & 0x88) == 0) {
+					MIDGAME_PIECE_SQUARE[ChessGame.WHITE_PLAYER][value][square] = MATERIAL_VALUES[value] + POSITION_VALUES[value][square ^ 0x70];
+					MIDGAME_PIECE_SQUARE[ChessGame.BLACK_PLAYER][value][square] = MATERIAL_VALUES[value] + POSITION_VALUES[value][square];
+					ENDGAME_PIECE_SQUARE[ChessGame.WHITE_PLAYER][value][square] = MATERIAL_VALUES[value] + endgameValues[square ^ 0x70];
+					ENDGAME_PIECE_SQUARE[ChessGame.BLACK_PLAYER][value][square] = MATERIAL_VALUES[value] + endgameValues[square];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Added to (attacker - target) so that every difference between two squares on the 0x88 board is a valid index.
+	 */
+	private static final int ATTACK_TABLE_OFFSET = 119;
+
+	/**
+	 * ATTACK_MASKS bits for pawns, which attack in opposite directions for each player. The other pieces use
+	 * (1 << value).
+	 */
+	private static final int WHITE_PAWN_ATTACK = 1 << 6;
+	private static final int BLACK_PAWN_ATTACK = 1 << 7;
+
+	/**
+	 * For each (attacker - target + 119), the types of piece that could attack the target from there on an empty board.
+	 */
+	private static final int[] ATTACK_MASKS = new int[240];
+
+	/**
+	 * For each (attacker - target + 119), the step that leads from the target towards the attacker, or 0 if the two
+	 * squares do not share a line.
+	 */
+	private static final int[] ATTACK_DELTAS = new int[240];
+
+	static {
+		// Sliding pieces and the king, along each of the eight lines.
+		for (int delta : WHITE_PIECE_DELTAS[ChessPiece.QUEEN]) {
+			boolean isDiagonal = (delta == 15 || delta == 17 || delta == -15 || delta == -17);
+			int sliderMask = (1 << ChessPiece.QUEEN) | (1 << (isDiagonal ? ChessPiece.BISHOP : ChessPiece.ROOK));
+			for (int distance = 1; distance < 8; distance+=1) {
+				int index = delta * distance + ATTACK_TABLE_OFFSET;
+				ATTACK_MASKS[index] |= sliderMask;
+				if (distance == 1) {
+					ATTACK_MASKS[index] |= 1 << ChessPiece.KING;
+				}
+				ATTACK_DELTAS[index] = delta;
+			}
+		}
+		// Knights.
+		for (int delta : WHITE_PIECE_DELTAS[ChessPiece.KNIGHT]) {
+			ATTACK_MASKS[delta + ATTACK_TABLE_OFFSET] |= 1 << ChessPiece.KNIGHT;
+			ATTACK_DELTAS[delta + ATTACK_TABLE_OFFSET] = delta;
+		}
+		// A white pawn attacks the squares up-left and up-right of it, so it stands below its target.
+		ATTACK_MASKS[-15 + ATTACK_TABLE_OFFSET] |= WHITE_PAWN_ATTACK;
+		ATTACK_MASKS[-17 + ATTACK_TABLE_OFFSET] |= WHITE_PAWN_ATTACK;
+		ATTACK_MASKS[15 + ATTACK_TABLE_OFFSET] |= BLACK_PAWN_ATTACK;
+		ATTACK_MASKS[17 + ATTACK_TABLE_OFFSET] |= BLACK_PAWN_ATTACK;
+	}
+
 	private static final long NANOS_PER_SECOND = 1_000_000_000;
+
+	/**
+	 * The clock is only read once every this many nodes (a power of two).
+	 */
+	private static final int TIME_CHECK_INTERVAL = 1024;
+
+	/**
+	 * Kinds of moves to generate: every move, only captures and promotions, or only the rest.
+	 */
+	private static final int GENERATE_ALL = 0;
+	private static final int GENERATE_CAPTURES = 1;
+	private static final int GENERATE_QUIETS = 2;
+
+	/**
+	 * The first iteration to be searched with an aspiration window; the scores of shallower iterations swing too much.
+	 */
+	private static final int ASPIRATION_MIN_DEPTH = 4;
+
+	/**
+	 * The share of the time limit after which no new iteration is started.
+	 */
+	private static final int SOFT_TIME_PERCENT = 50;
+
+	/**
+	 * The size of the shared transposition table, in megabytes, until setHashSize is called.
+	 */
+	private static final int DEFAULT_HASH_SIZE = 16;
+
+	/**
+	 * The principal variation found by the last call to findNextMove.
+	 */
+	private static volatile int[] lastPrincipalVariation = new int[0];
+
+	/**
+	 * The score of lastPrincipalVariation.
+	 */
+	private static volatile int lastScore = 0;
+
+	/**
+	 * The transposition table used by every search started with findNextMove.
+	 */
+	private static volatile TranspositionTable sharedTable = new TranspositionTable(DEFAULT_HASH_SIZE);
+
+	/**
+	 * The endgame bitbases, indexed by the strong side's piece value, or null until loaded.
+	 */
+	private static volatile Bitbase[] bitbases = null;
+
+	/**
+	 * The pieces for which there are bitbases of king and that piece against king.
+	 */
+	private static final int[] BITBASE_PIECES = {ChessPiece.QUEEN, ChessPiece.ROOK, ChessPiece.PAWN};
+
+	/**
+	 * The base score of a position the bitbases show to be won, well clear of both the evaluation and the mate scores.
+	 */
+	private static final int BITBASE_WIN_SCORE = 20_000;
+
+	/**
+	 * Returned by probeBitbases for a position no bitbase covers; no real score is this low.
+	 */
+	private static final int NO_BITBASE_SCORE = Integer.MIN_VALUE;
+
+	/**
+	 * The score of a mate at the root. Mates found deeper in the tree score less, so the shortest mate is preferred.
+	 */
+	public static final int MATE_SCORE = 30_000;
+
+	/**
+	 * Greater than any score the search can return.
+	 */
+	private static final int INFINITY = MATE_SCORE + 1;
+
+	/**
+	 * The margin by which a capture in the quiescence search must be able to exceed alpha, allowing for positional
+	 * gains, before it is searched.
+	 */
+	private static final int DELTA_MARGIN = 200;
+
+	/**
+	 * The order in which staticExchange tries attackers, least valuable first.
+	 */
+	private static final int[] SEE_ATTACKER_ORDER = {
+		ChessPiece.PAWN, ChessPiece.KNIGHT, ChessPiece.BISHOP, ChessPiece.ROOK, ChessPiece.QUEEN, ChessPiece.KING
+	};
+
+	/**
+	 * The score of a stalemate.
+	 */
+	public static final int DRAW_SCORE = 0;
+
+	/**
+	 * The pieces a pawn may be promoted to, most valuable first.
+	 */
+	private static final int[] PROMOTION_PIECES = {ChessPiece.QUEEN, ChessPiece.KNIGHT, ChessPiece.ROOK, ChessPiece.BISHOP};
+
+	/**
+	 * The squares the kings start on, which they must still occupy to castle.
+	 */
+	private static final int WHITE_KING_HOME = 4;
+	private static final int BLACK_KING_HOME = 116;
+
+	/**
+	 * An upper bound on the number of psuedo-legal moves in any position.
+	 */
+	public static final int MAX_MOVES = 256;
+
+	/**
+	 * The deepest ply the search will ever reach.
+	 */
+	public static final int MAX_PLY = 128;
+
+	/**
+	 * The deepest iteration the search will start, leaving room in the move buffers for the leaves below it.
+	 */
+	public static final int MAX_DEPTH = MAX_PLY - 2;
 }
@@ -0,0 +1,175 @@
+package com.muro.ai.chess;
+
+/**
+ * Static helpers for chess moves packed into a single <code>int</code>, which lets the search generate, store and
+ * perform moves without allocating a {@link ChessGame.ChessMove} per move.
+ *
+ * The bits are laid out as follows (least significant first):
+ *
+ * 		bits  0-6	source square (index into the 0x88 board)
+ *		bits  7-13	target square (index into the 0x88 board)
+ *		bits 14-16	value of the moving piece
+ *		bits 17-19	value of the captured piece (only meaningful for captures)
+ *		bits 20-22	value of the promotion piece (only meaningful for promotions)
+ *		bits 23-27	flags (capture, promotion, en passant, double-step, castling)
+ *
+ * Zero is never a valid move and is used to represent "no move".
+ */
+public final class Move {
+
+	private Move() {
+	}
+
+	/**
+	 * Packs a move into an integer.
+	 *
+	 * @param source the starting square
+	 * @param target the ending square
+	 * @param piece the value of the moving piece
+	 * @param captured the value of the captured piece, ignored unless the CAPTURE flag is set
+	 * @param promotion the value of the promotion piece, ignored unless the PROMOTION flag is set
+	 * @param flags a combination of the flag constants
+	 * @return the packed move
+	 */
+	public static int create(int source, int target, int piece, int captured, int promotion, int flags) {
+		return source | (target << TARGET_SHIFT) | (piece << PIECE_SHIFT) | (captured << CAPTURED_SHIFT)
+				| (promotion << PROMOTION_SHIFT) | flags;
+	}
+
+	/**
+	 * Returns the starting square of the specified move.
+	 */
+	public static int from(int move) {
+		return move & SQUARE_MASK;
+	}
+
+	/**
+	 * Returns the ending square of the specified move.
+	 */
+	public static int to(int move) {
+		return (move >>> TARGET_SHIFT) & SQUARE_MASK;
+	}
+
+	/**
+	 * Returns the value of the piece being moved.
+	 */
+	public static int piece(int move) {
+		return (move >>> PIECE_SHIFT) & PIECE_MASK;
+	}
+
+	/**
+	 * Returns the value of the piece being captured. Only meaningful if the move is a capture.
+	 */
+	public static int captured(int move) {
+		return (move >>> CAPTURED_SHIFT) & PIECE_MASK;
+	}
+
+	/**
+	 * Returns the value of the piece the pawn is promoted to. Only meaningful if the move is a promotion.
+	 */
+	public static int promotion(int move) {
+		return (move >>> PROMOTION_SHIFT) & PIECE_MASK;
+	}
+
+	/**
+	 * Indicates whether the specified move captures a piece (including en passant).
+	 */
+	public static boolean isCapture(int move) {
+		return (move & CAPTURE) != 0;
+	}
+
+	/**
+	 * Indicates whether the specified move promotes a pawn.
+	 */
+	public static boolean isPromotion(int move) {
+		return (move & PROMOTION) != 0;
+	}
+
+	/**
+	 * Indicates whether the specified move is an en passant capture.
+	 */
+	public static boolean isEnPassant(int move) {
+		return (move & EN_PASSANT) != 0;
+	}
+
+	/**
+	 * Indicates whether the specified move advances a pawn two squares.
+	 */
+	public static boolean isDoublePush(int move) {
+		return (move & DOUBLE_PUSH) != 0;
+	}
+
+	/**
+	 * Indicates whether the specified move is a castling move (the king moves two squares).
+	 */
+	public static boolean isCastling(int move) {
+		return (move & CASTLING) != 0;
+	}
+
+	/**
+	 * Converts the move to a String in the same modified algebraic notation produced by ChessMove.toString()
+	 * (e.g., Pe2e4, or Pb7c8Q for a promotion).
+	 *
+	 * @param move a packed move
+	 * @return a String representing the move
+	 */
+	public static String toString(int move) {
+
+		StringBuilder moveString = new StringBuilder(6);
+
+		// Append the piece symbol (i.e., P, N, K, B, R, Q).
+		moveString.append(ChessPiece.PIECE_SYMBOLS[piece(move)]);
+
+		// Append the starting location (e.g., a1, d4, etc.).
+		moveString.append(ChessGame.FILE_SYMBOLS[from(move) % 16]);
+		moveString.append(from(move) / 16 + 1);
+
+		// Append the ending location (e.g., a1, d4, etc.).
+		moveString.append(ChessGame.FILE_SYMBOLS[to(move) % 16]);
+		moveString.append(to(move) / 16 + 1);
+
+		// Append the promotion piece, if any.
+		if (isPromotion(move)) {
+			moveString.append(ChessPiece.PIECE_SYMBOLS[promotion(move)]);
+		}
+
+		return moveString.toString();
+	}
+
+	/**
+	 * Represents the absence of a move.
+	 */
+	public static final int NONE = 0;
+
+	/**
+	 * Set when the move captures a piece.
+	 */
+	public static final int CAPTURE = 1 << 23;
+
+	/**
+	 * Set when the move promotes a pawn.
+	 */
+	public static final int PROMOTION = 1 << 24;
+
+	/**
+	 * Set when the move is an en passant capture.
+	 */
+	public static final int EN_PASSANT = 1 << 25;
+
+	/**
+	 * Set when a pawn advances two squares.
+	 */
+	public static final int DOUBLE_PUSH = 1 << 26;
+
+	/**
+	 * Set when the king castles.
+	 */
+	public static final int CASTLING = 1 << 27;
+
+	private static final int SQUARE_MASK = 0x7F;
+	private static final int PIECE_MASK = 0x7;
+	private static final int TARGET_SHIFT = 7;
+	private static final int PIECE_SHIFT = 14;
+	private static final int CAPTURED_SHIFT = 17;
+	private static final int PROMOTION_SHIFT = 20;
+}
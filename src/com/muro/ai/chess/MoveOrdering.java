@@ -0,0 +1,295 @@
+package com.muro.ai.chess;
+
+/**
+ * Scores the moves generated at each node of a search so that the moves most likely to cause a cutoff are searched
+ * first, and remembers which quiet moves caused cutoffs so that later nodes can try them early.
+ *
+ * Moves are tried in the following order:
+ *
+ * 		1. the best move stored in the transposition table
+ *		2. captures (and queen promotions) that do not lose material, most valuable victim first and then least
+ *		   valuable attacker first
+ *		3. the two killer moves of the ply (quiet moves that recently caused a cutoff at the same distance from the root)
+ *		4. the counter-move to the opponent's previous move
+ *		5. the remaining quiet moves by their history score
+ *		6. captures that lose material according to the static exchange evaluation, least losing first
+ *		7. under-promotions
+ *
+ * The moves are not sorted up front. Instead selectNext swaps the best remaining move into place as the search asks
+ * for it, so a node that is cut off after the first move or two pays for little more than scoring. The main search
+ * goes further and hands out its moves through a MovePicker, which generates the quiet moves only when needed.
+ */
+public final class MoveOrdering {
+
+	/**
+	 * Constructs the move ordering for the specified search, whose static exchange evaluation sorts out losing
+	 * captures.
+	 *
+	 * @param theSearch the search whose moves are ordered
+	 */
+	public MoveOrdering(ChessSearch theSearch) {
+		this.theSearch = theSearch;
+	}
+
+	/**
+	 * Prepares for a new search of the same game, keeping what was learned in earlier searches but trusting it less.
+	 * Every history score is halved, and the killers move up by the number of plies played since the last search, so
+	 * that they stay with the positions at the same distance from the start of the game.
+	 *
+	 * @param rootPly the number of half-moves played in the game before the root of the new search
+	 */
+	public void newSearch(int rootPly) {
+		int shift = rootPly - lastRootPly;
+		lastRootPly = rootPly;
+
+		if (shift != 0) {
+			for (int ply = 0; ply < killers.length; ply+=1) {
+				int from = ply + shift;
+				boolean inRange = shift > 0 && from < killers.length;
+				killers[ply][0] = inRange ? killers[from][0] : Move.NONE;
+				killers[ply][1] = inRange ? killers[from][1] : Move.NONE;
+			}
+		}
+
+		for (int[][] historyOfPlayer : history) {
+			for (int[] scoresFrom : historyOfPlayer) {
+				for (int i = 0; i < scoresFrom.length; i+=1) {
+					scoresFrom[i] /= 2;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the buffer in which the scores of the moves generated at the specified ply are kept.
+	 *
+	 * @param ply the distance from the root
+	 * @return an array of ChessSearch.MAX_MOVES scores
+	 */
+	public int[] scores(int ply) {
+		return scores[ply];
+	}
+
+	/**
+	 * Scores each generated move.
+	 *
+	 * @param moves the generated moves
+	 * @param scores the array to which the scores are written
+	 * @param nMoves the number of generated moves
+	 * @param hashMove the best move stored in the transposition table, or Move.NONE
+	 * @param player the player to move
+	 * @param ply the distance from the root
+	 * @param previousMove the opponent's move that led to this position, or Move.NONE
+	 */
+	public void scoreMoves(int[] moves, int[] scores, int nMoves, int hashMove, int player, int ply, int previousMove) {
+
+		int counterMove = counterMove(player, previousMove);
+		int[] killersAtPly = killers[ply];
+		int[][] historyOfPlayer = history[player];
+
+		for (int i = 0; i < nMoves; i+=1) {
+			int move = moves[i];
+			int score;
+
+			if (move == hashMove) {
+				score = HASH_MOVE_SCORE;
+			} else if (Move.isPromotion(move) && Move.promotion(move) != ChessPiece.QUEEN) {
+				score = UNDER_PROMOTION_SCORE;
+			} else if (Move.isCapture(move) || Move.isPromotion(move)) {
+				// Most valuable victim, least valuable attacker. A legal king capture is always safe, so it goes first.
+				int victim = Move.isCapture(move) ? ChessSearch.MATERIAL_VALUES[Move.captured(move)] : 0;
+				int attacker = (Move.piece(move) == ChessPiece.KING) ? 0 : ChessSearch.MATERIAL_VALUES[Move.piece(move)];
+				score = CAPTURE_SCORE + victim * 16 - attacker;
+				if (Move.isPromotion(move)) {
+					score += ChessSearch.MATERIAL_VALUES[ChessPiece.QUEEN];
+				} else if (mayLoseMaterial(move)) {
+					// Only a capture by a more valuable piece can lose material; ask the exchange evaluator.
+					int exchange = theSearch.staticExchange(move);
+					if (exchange < 0) {
+						score = LOSING_CAPTURE_SCORE + exchange;
+					}
+				}
+			} else if (move == killersAtPly[0]) {
+				score = KILLER_SCORE + 1;
+			} else if (move == killersAtPly[1]) {
+				score = KILLER_SCORE;
+			} else if (move == counterMove) {
+				score = COUNTER_MOVE_SCORE;
+			} else {
+				score = historyOfPlayer[Move.from(move)][Move.to(move)];
+			}
+
+			scores[i] = score;
+		}
+	}
+
+	/**
+	 * Swaps the best-scoring move from index onwards into index and returns it.
+	 *
+	 * @param moves the generated moves
+	 * @param scores their scores, swapped along with the moves
+	 * @param index the number of moves already searched
+	 * @param nMoves the number of generated moves
+	 * @return the move to search next
+	 */
+	public static int selectNext(int[] moves, int[] scores, int index, int nMoves) {
+		int best = index;
+		for (int i = index + 1; i < nMoves; i+=1) {
+			if (scores[i] > scores[best]) {
+				best = i;
+			}
+		}
+
+		int move = moves[best];
+		if (best != index) {
+			moves[best] = moves[index];
+			moves[index] = move;
+			int score = scores[best];
+			scores[best] = scores[index];
+			scores[index] = score;
+		}
+		return move;
+	}
+
+	/**
+	 * Records that a quiet move caused a cutoff: it becomes the first killer of its ply and the counter-move to the
+	 * previous move, and its history score rises while those of the quiet moves searched before it fall.
+	 *
+	 * @param move the move that caused the cutoff
+	 * @param quietsSearched the quiet moves searched before it
+	 * @param nQuietsSearched the number of moves in quietsSearched
+	 * @param player the player to move
+	 * @param ply the distance from the root
+	 * @param draft the number of plies searched below the node, which weights the history bonus
+	 * @param previousMove the opponent's move that led to this position, or Move.NONE
+	 */
+	public void recordCutoff(int move, int[] quietsSearched, int nQuietsSearched, int player, int ply, int draft,
+			int previousMove) {
+
+		// Keep two different killers, the most recent first.
+		int[] killersAtPly = killers[ply];
+		if (killersAtPly[0] != move) {
+			killersAtPly[1] = killersAtPly[0];
+			killersAtPly[0] = move;
+		}
+
+		if (previousMove != Move.NONE) {
+			counterMoves[player][Move.piece(previousMove)][Move.to(previousMove)] = move;
+		}
+
+		// Deeper cutoffs are worth more, and the quiet moves that failed to cut off are worth less.
+		int bonus = Math.min(draft * draft, MAX_HISTORY_BONUS);
+		int[][] historyOfPlayer = history[player];
+		addHistory(historyOfPlayer, move, bonus);
+		for (int i = 0; i < nQuietsSearched; i+=1) {
+			addHistory(historyOfPlayer, quietsSearched[i], -bonus);
+		}
+	}
+
+	/**
+	 * Indicates whether the specified capture could lose material, that is whether the capturing piece is worth more
+	 * than its victim. King captures are legal only onto undefended squares, so they never lose material.
+	 */
+	public static boolean mayLoseMaterial(int move) {
+		int piece = Move.piece(move);
+		return piece != ChessPiece.KING
+				&& ChessSearch.MATERIAL_VALUES[piece] > ChessSearch.MATERIAL_VALUES[Move.captured(move)];
+	}
+
+	/**
+	 * Indicates whether the specified move is a quiet move, that is neither a capture nor a promotion.
+	 */
+	public static boolean isQuiet(int move) {
+		return (move & (Move.CAPTURE | Move.PROMOTION)) == 0;
+	}
+
+	/**
+	 * Indicates whether the specified score, given to a quiet move, came from the history table rather than from the
+	 * hash move, killer or counter-move bands.
+	 */
+	public static boolean isHistoryScore(int score) {
+		return score < COUNTER_MOVE_SCORE;
+	}
+
+	/**
+	 * Returns one of the two killer moves of the specified ply.
+	 *
+	 * @param ply the distance from the root
+	 * @param slot 0 for the most recent killer, 1 for the other
+	 * @return a quiet packed move, or Move.NONE
+	 */
+	int killer(int ply, int slot) {
+		return killers[ply][slot];
+	}
+
+	/**
+	 * Returns the move that last refuted the specified move, or Move.NONE.
+	 */
+	int counterMove(int player, int previousMove) {
+		if (previousMove == Move.NONE) {
+			return Move.NONE;
+		}
+		return counterMoves[player][Move.piece(previousMove)][Move.to(previousMove)];
+	}
+
+	/**
+	 * Adds to the history score of a move, halving every score of the player once one grows too large so that the
+	 * scores stay below the killer and counter-move scores.
+	 */
+	private static void addHistory(int[][] historyOfPlayer, int move, int bonus) {
+		int[] fromSquare = historyOfPlayer[Move.from(move)];
+		int to = Move.to(move);
+		fromSquare[to] = Math.max(fromSquare[to] + bonus, -MAX_HISTORY);
+		if (fromSquare[to] > MAX_HISTORY) {
+			for (int[] scoresFrom : historyOfPlayer) {
+				for (int i = 0; i < scoresFrom.length; i+=1) {
+					scoresFrom[i] /= 2;
+				}
+			}
+		}
+	}
+
+	/**
+	 * The search whose moves are ordered.
+	 */
+	private final ChessSearch theSearch;
+
+	/**
+	 * The scores of the moves generated at each ply.
+	 */
+	private final int[][] scores = new int[ChessSearch.MAX_PLY][ChessSearch.MAX_MOVES];
+
+	/**
+	 * The number of half-moves played before the root of the last search.
+	 */
+	private int lastRootPly = 0;
+
+	/**
+	 * The two killer moves of each ply, most recent first.
+	 */
+	private final int[][] killers = new int[ChessSearch.MAX_PLY][2];
+
+	/**
+	 * The butterfly history table, indexed by player, source square and target square.
+	 */
+	private final int[][][] history = new int[2][128][128];
+
+	/**
+	 * The quiet move that last refuted each move, indexed by the player to reply and the piece and target square of
+	 * the move being refuted.
+	 */
+	private final int[][][] counterMoves = new int[2][ChessPiece.PIECE_SYMBOLS.length][128];
+
+	static final int HASH_MOVE_SCORE = 1 << 30;
+	private static final int CAPTURE_SCORE = 1 << 28;
+	static final int KILLER_SCORE = 1 << 27;
+	static final int COUNTER_MOVE_SCORE = 1 << 26;
+	private static final int LOSING_CAPTURE_SCORE = -(1 << 25);
+	private static final int UNDER_PROMOTION_SCORE = -(1 << 26);
+
+	/**
+	 * History scores are kept well below COUNTER_MOVE_SCORE.
+	 */
+	private static final int MAX_HISTORY = 1 << 20;
+	private static final int MAX_HISTORY_BONUS = 1 << 12;
+}
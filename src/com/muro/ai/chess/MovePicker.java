@@ -0,0 +1,241 @@
+package com.muro.ai.chess;
+
+/**
+ * Hands out the moves of one node of the search in stages, generating each group of moves only when the search asks
+ * for it. Most nodes are cut off by the first move or two, so the quiet moves, which make up most of the moves in a
+ * position, are usually never generated at all.
+ *
+ * The stages are:
+ *
+ * 		1. the best move stored in the transposition table, checked for legality but not generated
+ *		2. captures and queen promotions that do not lose material (see MoveOrdering)
+ *		3. the two killer moves of the ply and the counter-move to the opponent's previous move, again only checked
+ *		4. the remaining quiet moves, generated now and tried by their history score
+ *		5. the captures that lose material and the under-promotions, generated in stage 2 and left for last
+ *
+ * A move is never handed out twice, even if, say, the hash move is also a killer.
+ */
+final class MovePicker {
+
+	/**
+	 * Constructs the move picker for one ply of the specified search.
+	 *
+	 * @param theSearch the search, which generates the moves and checks remembered moves for legality
+	 * @param moveOrdering the move ordering, which scores the moves and keeps the killers and counter-moves
+	 * @param moves the buffer for the captures
+	 * @param scores the buffer for the scores of the captures
+	 */
+	MovePicker(ChessSearch theSearch, MoveOrdering moveOrdering, int[] moves, int[] scores) {
+		this.theSearch = theSearch;
+		this.moveOrdering = moveOrdering;
+		this.captures = moves;
+		this.captureScores = scores;
+	}
+
+	/**
+	 * Prepares to hand out the moves of a new node.
+	 *
+	 * @param player the player to move
+	 * @param ply the distance from the root
+	 * @param hashMove the best move stored in the transposition table, or Move.NONE
+	 * @param previousMove the opponent's move that led to this position, or Move.NONE
+	 */
+	void reset(int player, int ply, int hashMove, int previousMove) {
+		this.player = player;
+		this.ply = ply;
+		this.hashMove = hashMove;
+		this.previousMove = previousMove;
+		stage = HASH_MOVE;
+		nSpecial = 0;
+	}
+
+	/**
+	 * Returns the next move to search.
+	 *
+	 * @return a legal packed move, or Move.NONE once every move has been handed out
+	 */
+	int next() {
+		while (true) {
+			switch (stage) {
+			case HASH_MOVE:
+				// The hash move needs no generation at all, only a check that it fits this position.
+				stage = GENERATE_CAPTURES;
+				if (theSearch.isLegalMove(hashMove)) {
+					specialMoves[nSpecial++] = hashMove;
+					score = MoveOrdering.HASH_MOVE_SCORE;
+					return hashMove;
+				}
+				break;
+
+			case GENERATE_CAPTURES:
+				nCaptures = theSearch.generateCaptures(player, captures);
+				moveOrdering.scoreMoves(captures, captureScores, nCaptures, Move.NONE, player, ply, previousMove);
+				captureIndex = 0;
+				stage = GOOD_CAPTURES;
+				break;
+
+			case GOOD_CAPTURES:
+				// Winning and even captures first; the losing ones score below zero and wait for the last stage.
+				while (captureIndex < nCaptures) {
+					int move = MoveOrdering.selectNext(captures, captureScores, captureIndex, nCaptures);
+					if (captureScores[captureIndex] < 0) {
+						break;
+					}
+					score = captureScores[captureIndex++];
+					if (!isSpecial(move)) {
+						return move;
+					}
+				}
+				stage = KILLERS;
+				killerIndex = 0;
+				break;
+
+			case KILLERS:
+				// The killers and the counter-move were made in other positions, so they may not be legal here.
+				while (killerIndex < 3) {
+					int move;
+					if (killerIndex < 2) {
+						move = moveOrdering.killer(ply, killerIndex);
+						score = MoveOrdering.KILLER_SCORE;
+					} else {
+						move = moveOrdering.counterMove(player, previousMove);
+						score = MoveOrdering.COUNTER_MOVE_SCORE;
+					}
+					killerIndex++;
+					if (MoveOrdering.isQuiet(move) && !isSpecial(move) && theSearch.isLegalMove(move)) {
+						specialMoves[nSpecial++] = move;
+						return move;
+					}
+				}
+				stage = GENERATE_QUIETS;
+				break;
+
+			case GENERATE_QUIETS:
+				nQuiets = theSearch.generateQuietMoves(player, quiets);
+				moveOrdering.scoreMoves(quiets, quietScores, nQuiets, Move.NONE, player, ply, Move.NONE);
+				quietIndex = 0;
+				stage = QUIETS;
+				break;
+
+			case QUIETS:
+				while (quietIndex < nQuiets) {
+					int move = MoveOrdering.selectNext(quiets, quietScores, quietIndex, nQuiets);
+					score = quietScores[quietIndex++];
+					if (!isSpecial(move)) {
+						return move;
+					}
+				}
+				stage = BAD_CAPTURES;
+				break;
+
+			case BAD_CAPTURES:
+				// The captures left over from stage 2, least losing first.
+				while (captureIndex < nCaptures) {
+					int move = MoveOrdering.selectNext(captures, captureScores, captureIndex, nCaptures);
+					score = captureScores[captureIndex++];
+					if (!isSpecial(move)) {
+						return move;
+					}
+				}
+				stage = DONE;
+				break;
+
+			default:
+				return Move.NONE;
+			}
+		}
+	}
+
+	/**
+	 * Returns the ordering score of the move last returned by next, which tells which stage it came from.
+	 *
+	 * @return a MoveOrdering score
+	 */
+	int score() {
+		return score;
+	}
+
+	/**
+	 * Indicates whether the specified move was already handed out as the hash move, a killer or the counter-move.
+	 */
+	private boolean isSpecial(int move) {
+		for (int i = 0; i < nSpecial; i+=1) {
+			if (specialMoves[i] == move) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The search whose moves are picked.
+	 */
+	private final ChessSearch theSearch;
+
+	/**
+	 * Scores the moves and keeps the killers and counter-moves.
+	 */
+	private final MoveOrdering moveOrdering;
+
+	/**
+	 * The captures and promotions of the node, and their scores.
+	 */
+	private final int[] captures;
+	private final int[] captureScores;
+
+	/**
+	 * The quiet moves of the node, and their scores.
+	 */
+	private final int[] quiets = new int[ChessSearch.MAX_MOVES];
+	private final int[] quietScores = new int[ChessSearch.MAX_MOVES];
+
+	/**
+	 * The hash move, killers and counter-move already handed out, which the generated stages skip.
+	 */
+	private final int[] specialMoves = new int[4];
+
+	/**
+	 * The number of moves in specialMoves.
+	 */
+	private int nSpecial = 0;
+
+	/**
+	 * The node being searched.
+	 */
+	private int player;
+	private int ply;
+	private int hashMove;
+	private int previousMove;
+
+	/**
+	 * The current stage.
+	 */
+	private int stage = DONE;
+
+	/**
+	 * The number of captures and quiet moves generated, and how many of each have been handed out.
+	 */
+	private int nCaptures = 0;
+	private int captureIndex = 0;
+	private int nQuiets = 0;
+	private int quietIndex = 0;
+
+	/**
+	 * The next of the two killers (0 and 1) or the counter-move (2) to try.
+	 */
+	private int killerIndex = 0;
+
+	/**
+	 * The ordering score of the move last returned.
+	 */
+	private int score = 0;
+
+	private static final int HASH_MOVE = 0;
+	private static final int GENERATE_CAPTURES = 1;
+	private static final int GOOD_CAPTURES = 2;
+	private static final int KILLERS = 3;
+	private static final int GENERATE_QUIETS = 4;
+	private static final int QUIETS = 5;
+	private static final int BAD_CAPTURES = 6;
+	private static final int DONE = 7;
+}
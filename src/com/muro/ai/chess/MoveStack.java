@@ -0,0 +1,43 @@
+package com.muro.ai.chess;
+
+/**
+ * A preallocated stack of move buffers, one per ply of the search. The move generators write packed moves (see
+ * {@link Move}) directly into the buffer for the current ply and return a count, so searching a node never allocates.
+ * 
+ * A buffer stays valid until the search returns to a shallower ply and generates into it again.
+ */
+public final class MoveStack {
+
+	/**
+	 * Constructs a move stack deep enough for the specified number of plies.
+	 * 
+	 * @param maxPly the number of plies (and therefore buffers) to allocate
+	 */
+	public MoveStack(int maxPly) {
+		buffers = new int[maxPly][ChessSearch.MAX_MOVES];
+	}
+
+	/**
+	 * Returns the move buffer for the specified ply.
+	 * 
+	 * @param ply the distance from the root of the search
+	 * @return an array of ChessSearch.MAX_MOVES packed moves
+	 */
+	public int[] get(int ply) {
+		return buffers[ply];
+	}
+
+	/**
+	 * Returns the number of plies this stack can hold.
+	 * 
+	 * @return the maximum ply plus one
+	 */
+	public int size() {
+		return buffers.length;
+	}
+
+	/**
+	 * One buffer of moves for each ply.
+	 */
+	private final int[][] buffers;
+}
@@ -0,0 +1,257 @@
+package com.muro.ai.chess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * An opening book read straight from a memory-mapped file, so that opening it costs nothing however large it is and
+ * the operating system pages in only the entries that are looked up.
+ *
+ * The file uses the Polyglot layout: a sequence of 16-byte big-endian entries sorted by key (as an unsigned number),
+ * each holding
+ *
+ * 		bytes  0-7	the position's key
+ *		bytes  8-9	the move (see below)
+ *		bytes 10-11	the move's weight
+ *		bytes 12-15	a learning value, which is ignored
+ *
+ * The move packs the target file into bits 0-2, the target rank into bits 3-5, the source file into bits 6-8, the
+ * source rank into bits 9-11 and the promotion piece (1 knight, 2 bishop, 3 rook, 4 queen) into bits 12-14. Castling
+ * is written as the king capturing its own rook.
+ *
+ * The keys are this engine's Zobrist hashes (see Zobrist), so books must be compiled with OpeningBookBuilder rather
+ * than taken from elsewhere.
+ */
+public final class OpeningBook {
+
+	/**
+	 * Opens the specified book file.
+	 *
+	 * @param bookFile a file written by OpeningBookBuilder
+	 * @throws IOException if the file cannot be read
+	 */
+	public OpeningBook(File bookFile) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(bookFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			entries = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			// The mapping stays valid after the file is closed.
+			file.close();
+		}
+		nEntries = entries.capacity() / ENTRY_SIZE;
+	}
+
+	/**
+	 * Returns every legal book move for the position of the specified search. The search is only used to check the
+	 * moves, so one search kept in step with the game can serve every lookup.
+	 *
+	 * @param theSearch a search whose game holds the position to look up
+	 * @return the book moves, in the order they appear in the book (possibly empty)
+	 */
+	public List<BookMove> getMoves(ChessSearch theSearch) {
+		List<BookMove> moves = new ArrayList<BookMove>();
+		ChessGame aGame = theSearch.getChessGame();
+		long key = aGame.getHash();
+
+		// Find the first entry for the position; its other entries follow it.
+		for (int index = findFirst(key); index < nEntries && keyAt(index) == key; index+=1) {
+			int offset = index * ENTRY_SIZE;
+			int move = fromBookMove(aGame, entries.getShort(offset + 8) & 0xFFFF);
+			int weight = entries.getShort(offset + 10) & 0xFFFF;
+
+			// Keys can collide, so make sure the move can actually be played here.
+			if (weight > 0 && theSearch.isLegalMove(move)) {
+				moves.add(new BookMove(Move.toString(move), weight));
+			}
+		}
+
+		return moves;
+	}
+
+	/**
+	 * Picks one of the book moves for the specified position at random, each with a probability proportional to its
+	 * weight.
+	 *
+	 * @param theSearch a search whose game holds the position to look up
+	 * @param random the source of randomness
+	 * @return a move in our modified algebraic notation (see ChessGame.performMove), or null if the position is not in
+	 *         the book
+	 */
+	public String pickMove(ChessSearch theSearch, Random random) {
+		List<BookMove> moves = getMoves(theSearch);
+
+		int total = 0;
+		for (BookMove aMove : moves) {
+			total += aMove.weight;
+		}
+		if (total == 0) {
+			return null;
+		}
+
+		int choice = random.nextInt(total);
+		for (BookMove aMove : moves) {
+			choice -= aMove.weight;
+			if (choice < 0) {
+				return aMove.move;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the number of entries in the book.
+	 *
+	 * @return the number of (position, move) pairs
+	 */
+	public int size() {
+		return nEntries;
+	}
+
+	/**
+	 * Packs a move into the book's 16-bit move format. Castling becomes the king capturing its own rook.
+	 *
+	 * @param move a packed move (see Move)
+	 * @return the book move
+	 */
+	static int toBookMove(int move) {
+		int from = Move.from(move);
+		int to = Move.to(move);
+
+		if (Move.isCastling(move)) {
+			to = (to > from) ? from + 3 : from - 4;
+		}
+
+		int bookMove = (to & 7) | ((to >> 4) << 3) | ((from & 7) << 6) | ((from >> 4) << 9);
+		if (Move.isPromotion(move)) {
+			bookMove |= PROMOTION_CODES[Move.promotion(move)] << 12;
+		}
+		return bookMove;
+	}
+
+	/**
+	 * Unpacks a book move against the specified position.
+	 *
+	 * @param aGame the position the move is played in
+	 * @param bookMove a move in the book's 16-bit format
+	 * @return a packed move (see Move), or Move.NONE if there is no piece on the source square
+	 */
+	static int fromBookMove(ChessGame aGame, int bookMove) {
+		int to = ((bookMove >> 3) & 7) * 16 + (bookMove & 7);
+		int from = ((bookMove >> 9) & 7) * 16 + ((bookMove >> 6) & 7);
+		int promotion = PROMOTION_PIECES[(bookMove >> 12) & 7];
+
+		ChessPiece aPiece = aGame.theBoard[from];
+		if (aPiece == null) {
+			return Move.NONE;
+		}
+
+		// A king "capturing" its own rook is castling.
+		ChessPiece target = aGame.theBoard[to];
+		if (aPiece.value == ChessPiece.KING && target != null && target.owner == aPiece.owner
+				&& target.value == ChessPiece.ROOK) {
+			to = (to > from) ? from + 2 : from - 2;
+		}
+
+		return aGame.createMove(from, to, promotion);
+	}
+
+	/**
+	 * Returns the index of the first entry whose key is not below the specified key.
+	 */
+	private int findFirst(long key) {
+		int low = 0;
+		int high = nEntries;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (isBelow(keyAt(middle), key)) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * Returns the key of the specified entry.
+	 */
+	private long keyAt(int index) {
+		return entries.getLong(index * ENTRY_SIZE);
+	}
+
+	/**
+	 * Compares two keys as unsigned numbers, the order in which the book is sorted.
+	 *
+	 * @return true if the first key sorts before the second
+	 */
+	static boolean isBelow(long key, long other) {
+		return (key ^ Long.MIN_VALUE) < (other ^ Long.MIN_VALUE);
+	}
+
+	/**
+	 * A move found in the book, with its weight.
+	 */
+	public static final class BookMove {
+
+		/**
+		 * Constructs a book move.
+		 *
+		 * @param move the move in our modified algebraic notation
+		 * @param weight the move's weight
+		 */
+		public BookMove(String move, int weight) {
+			this.move = move;
+			this.weight = weight;
+		}
+
+		/**
+		 * Returns the move and its weight, e.g. "Pe2e4 (120)".
+		 */
+		public String toString() {
+			return move + " (" + weight + ")";
+		}
+
+		/**
+		 * The move, in our modified algebraic notation (see ChessGame.performMove).
+		 */
+		public final String move;
+
+		/**
+		 * How often the move should be played relative to the other moves of the position.
+		 */
+		public final int weight;
+	}
+
+	/**
+	 * The entries of the book, mapped into memory.
+	 */
+	private final ByteBuffer entries;
+
+	/**
+	 * The number of entries in the book.
+	 */
+	private final int nEntries;
+
+	/**
+	 * The size of an entry, in bytes.
+	 */
+	static final int ENTRY_SIZE = 16;
+
+	/**
+	 * The book's promotion code for each piece value (pawn, knight, king, bishop, rook, queen).
+	 */
+	private static final int[] PROMOTION_CODES = { 0, 1, 0, 2, 3, 4 };
+
+	/**
+	 * The piece value for each of the book's promotion codes; zero means no promotion.
+	 */
+	private static final int[] PROMOTION_PIECES = { 0, ChessPiece.KNIGHT, ChessPiece.BISHOP, ChessPiece.ROOK,
+			ChessPiece.QUEEN, 0, 0, 0 };
+}
@@ -0,0 +1,495 @@
+package com.muro.ai.chess;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compiles an opening book (see OpeningBook) from a collection of games in PGN.
+ *
+ * Every move played in the first plies of each game is entered in the book under the position it was played in. A
+ * move scores two points for every game its side went on to win and one for every draw, so that moves which only ever
+ * lost never make it into the book, and the points become the move's weight.
+ *
+ * The PGN reader understands tag pairs, comments, recursive variations (which are skipped), numeric annotation glyphs,
+ * move numbers and standard algebraic notation. A game with a move it cannot read is cut short at that move.
+ */
+public final class OpeningBookBuilder {
+
+	public static void main(String[] args) throws IOException {
+
+		if (args.length < 3) {
+			System.err.println("Usage: OpeningBookBuilder book maxPlies pgn...");
+			return;
+		}
+
+		OpeningBookBuilder theBuilder = new OpeningBookBuilder(Integer.parseInt(args[1]));
+		for (int i = 2; i < args.length; i+=1) {
+			theBuilder.addGames(new File(args[i]));
+		}
+
+		int nEntries = theBuilder.write(new File(args[0]));
+		System.out.println(theBuilder.nGames + " games, " + nEntries + " book entries");
+	}
+
+	/**
+	 * Constructs a builder with an empty book.
+	 *
+	 * @param maxPlies how many plies of each game to enter in the book
+	 */
+	public OpeningBookBuilder(int maxPlies) {
+		this.maxPlies = Math.min(maxPlies, MAX_PLIES);
+
+		// One search serves every game; its position is reset in place between games.
+		ChessGame aGame = new ChessGame();
+		aGame.initGame();
+		theSearch = new ChessSearch(aGame);
+	}
+
+	/**
+	 * Enters the opening of every game in the specified PGN file in the book.
+	 *
+	 * @param pgnFile a file of games in PGN
+	 * @throws IOException if the file cannot be read
+	 */
+	public void addGames(File pgnFile) throws IOException {
+		String pgn = new String(Files.readAllBytes(pgnFile.toPath()), StandardCharsets.ISO_8859_1);
+
+		startGame();
+		int i = 0;
+		while (i < pgn.length()) {
+			char c = pgn.charAt(i);
+
+			if (Character.isWhitespace(c)) {
+				i+=1;
+			} else if (c == '[') {
+				// A tag pair. The first tag after the moves starts the next game.
+				int end = pgn.indexOf(']', i);
+				end = (end < 0) ? pgn.length() : end + 1;
+				if (inMovetext) {
+					finishGame();
+				}
+				readTag(pgn.substring(i + 1, end - 1));
+				i = end;
+			} else if (c == '{') {
+				// A comment runs to the closing brace.
+				int end = pgn.indexOf('}', i);
+				i = (end < 0) ? pgn.length() : end + 1;
+			} else if (c == ';') {
+				// A comment runs to the end of the line.
+				int end = pgn.indexOf('\n', i);
+				i = (end < 0) ? pgn.length() : end + 1;
+			} else if (c == '(') {
+				// Skip the whole variation, including any nested inside it.
+				i = skipVariation(pgn, i);
+			} else {
+				// Anything else is a token running up to the next delimiter.
+				int end = i;
+				while (end < pgn.length() && !Character.isWhitespace(pgn.charAt(end))
+						&& "[]{}();".indexOf(pgn.charAt(end)) < 0) {
+					end+=1;
+				}
+				if (end == i) {
+					end+=1;
+				}
+				readToken(pgn.substring(i, end));
+				i = end;
+			}
+		}
+
+		if (inMovetext) {
+			finishGame();
+		}
+	}
+
+	/**
+	 * Writes the book, sorted by key, to the specified file. Positions whose total weight does not fit in 16 bits are
+	 * scaled down.
+	 *
+	 * @param bookFile the file to write
+	 * @return the number of entries written
+	 * @throws IOException if the file cannot be written
+	 */
+	public int write(File bookFile) throws IOException {
+
+		// Polyglot books are sorted by key as an unsigned number.
+		List<Long> keys = new ArrayList<Long>(book.keySet());
+		Collections.sort(keys, new Comparator<Long>() {
+			public int compare(Long key, Long other) {
+				if (key.longValue() == other.longValue()) {
+					return 0;
+				}
+				return OpeningBook.isBelow(key, other) ? -1 : 1;
+			}
+		});
+
+		int nEntries = 0;
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bookFile)));
+		try {
+			for (Long key : keys) {
+				Map<Integer, Integer> moves = book.get(key);
+
+				// Scale the weights so that the largest fits in 16 bits.
+				int maxWeight = 0;
+				for (int weight : moves.values()) {
+					maxWeight = Math.max(maxWeight, weight);
+				}
+
+				// Heaviest move first, as Polyglot books are written.
+				List<Map.Entry<Integer, Integer>> entries = new ArrayList<Map.Entry<Integer, Integer>>(moves.entrySet());
+				Collections.sort(entries, new Comparator<Map.Entry<Integer, Integer>>() {
+					public int compare(Map.Entry<Integer, Integer> entry, Map.Entry<Integer, Integer> other) {
+						return other.getValue().compareTo(entry.getValue());
+					}
+				});
+
+				for (Map.Entry<Integer, Integer> entry : entries) {
+					int weight = entry.getValue();
+					if (weight <= 0) {
+						continue;
+					}
+					if (maxWeight > MAX_WEIGHT) {
+						weight = Math.max((int)((long)weight * MAX_WEIGHT / maxWeight), 1);
+					}
+					out.writeLong(key);
+					out.writeShort(entry.getKey());
+					out.writeShort(weight);
+					out.writeInt(0);
+					nEntries+=1;
+				}
+			}
+		} finally {
+			out.close();
+		}
+
+		return nEntries;
+	}
+
+	/**
+	 * Resolves a move in standard algebraic notation (e.g. "Nbd7", "exd5", "e8=Q+", "O-O") against the legal moves of
+	 * the specified position.
+	 *
+	 * @param san the move
+	 * @param theSearch a search whose game holds the position
+	 * @return a packed move (see Move), or Move.NONE if the move is illegal or ambiguous
+	 */
+	static int parseSan(String san, ChessSearch theSearch) {
+
+		// Strip check marks and annotations.
+		int length = san.length();
+		while (length > 0 && "+#!?".indexOf(san.charAt(length - 1)) >= 0) {
+			length-=1;
+		}
+		san = san.substring(0, length).replace('0', 'O');
+
+		ChessGame aGame = theSearch.getChessGame();
+		int[] moves = new int[ChessSearch.MAX_MOVES];
+		int nMoves = theSearch.generatePlayerMoves(aGame.getSideToMove(), moves);
+
+		// Castling names no squares at all.
+		if (san.equals("O-O") || san.equals("O-O-O")) {
+			boolean kingSide = san.equals("O-O");
+			for (int i = 0; i < nMoves; i+=1) {
+				if (Move.isCastling(moves[i]) && (Move.to(moves[i]) > Move.from(moves[i])) == kingSide) {
+					return moves[i];
+				}
+			}
+			return Move.NONE;
+		}
+
+		// The promotion piece follows the target square, with or without an equals sign.
+		int promotion = 0;
+		int equals = san.indexOf('=');
+		if (equals >= 0) {
+			promotion = pieceValue(san.substring(equals + 1));
+			san = san.substring(0, equals);
+		} else if (san.length() > 2 && pieceValue(san.substring(san.length() - 1)) > 0) {
+			promotion = pieceValue(san.substring(san.length() - 1));
+			san = san.substring(0, san.length() - 1);
+		}
+		if (san.length() < 2 || promotion < 0) {
+			return Move.NONE;
+		}
+
+		// Pieces are named by capital letters; pawn moves start with a file.
+		int piece = ChessPiece.PAWN;
+		int start = 0;
+		if (pieceValue(san.substring(0, 1)) > 0) {
+			piece = pieceValue(san.substring(0, 1));
+			start = 1;
+		}
+
+		int target = toSquare(san.charAt(san.length() - 2), san.charAt(san.length() - 1));
+		if (target < 0) {
+			return Move.NONE;
+		}
+
+		// Whatever is left between the piece and the target tells apart pieces that could both get there.
+		int fromFile = -1;
+		int fromRank = -1;
+		for (int i = start; i < san.length() - 2; i+=1) {
+			char c = san.charAt(i);
+			if (c >= 'a' && c <= 'h') {
+				fromFile = c - 'a';
+			} else if (c >= '1' && c <= '8') {
+				fromRank = c - '1';
+			} else if (c != 'x' && c != '-' && c != ':') {
+				return Move.NONE;
+			}
+		}
+
+		int found = Move.NONE;
+		for (int i = 0; i < nMoves; i+=1) {
+			int move = moves[i];
+			int from = Move.from(move);
+			if (Move.piece(move) != piece || Move.to(move) != target || Move.isCastling(move)) {
+				continue;
+			}
+			if ((fromFile >= 0 && (from & 7) != fromFile) || (fromRank >= 0 && (from >> 4) != fromRank)) {
+				continue;
+			}
+			if (Move.isPromotion(move) ? Move.promotion(move) != ((promotion > 0) ? promotion : ChessPiece.QUEEN)
+					: promotion > 0) {
+				continue;
+			}
+
+			// Two candidates means the disambiguation was missing.
+			if (found != Move.NONE) {
+				return Move.NONE;
+			}
+			found = move;
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns the value of the piece named by the specified capital letter.
+	 *
+	 * @return a piece value other than PAWN, or 0 if the letter names no piece (or a pawn), or -1 if it is empty
+	 */
+	private static int pieceValue(String symbol) {
+		if (symbol.length() != 1) {
+			return -1;
+		}
+		int value = String.valueOf(ChessPiece.PIECE_SYMBOLS).indexOf(symbol.charAt(0));
+		return (value == ChessPiece.PAWN) ? 0 : Math.max(value, 0);
+	}
+
+	/**
+	 * Converts a file letter and a rank digit to a 0x88 index.
+	 *
+	 * @return the index, or -1 if either is off the board
+	 */
+	private static int toSquare(char file, char rank) {
+		if (file < 'a' || file > 'h' || rank < '1' || rank > '8') {
+			return -1;
+		}
+		return (rank - '1') * 16 + (file - 'a');
+	}
+
+	/**
+	 * Reads a tag pair, of which only the result and the starting position matter.
+	 */
+	private void readTag(String tag) {
+		int quote = tag.indexOf('"');
+		if (quote < 0) {
+			return;
+		}
+		String name = tag.substring(0, quote).trim();
+		String value = tag.substring(quote + 1, Math.max(tag.lastIndexOf('"'), quote + 1));
+
+		if (name.equals("Result")) {
+			result = value;
+		} else if (name.equals("FEN")) {
+			theSearch.getChessGame().loadFen(value);
+		}
+	}
+
+	/**
+	 * Reads a token from the movetext: a move number, an annotation glyph, a result or a move.
+	 */
+	private void readToken(String token) {
+
+		// A result ends the game.
+		if (token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*")) {
+			result = token;
+			finishGame();
+			return;
+		}
+
+		inMovetext = true;
+
+		// Skip annotation glyphs ("$1") and move numbers ("12." or "12..."), which may run into the move ("12.Nf3").
+		if (token.startsWith("$")) {
+			return;
+		}
+		int start = 0;
+		while (start < token.length() && (Character.isDigit(token.charAt(start)) || token.charAt(start) == '.')) {
+			start+=1;
+		}
+		if (start == token.length()) {
+			return;
+		}
+		token = token.substring(start);
+
+		// Once a move cannot be read, the rest of the game cannot be followed either.
+		if (!followable || nGameMoves >= maxPlies) {
+			return;
+		}
+
+		ChessGame aGame = theSearch.getChessGame();
+		int move = parseSan(token, theSearch);
+		if (move == Move.NONE) {
+			followable = false;
+			return;
+		}
+
+		gameKeys[nGameMoves] = aGame.getHash();
+		gameMoves[nGameMoves] = OpeningBook.toBookMove(move);
+		gamePlayers[nGameMoves] = aGame.getSideToMove();
+		nGameMoves+=1;
+
+		aGame.performMove(Move.toString(move));
+	}
+
+	/**
+	 * Skips the variation starting at the specified index, including any variations nested inside it.
+	 *
+	 * @return the index just past the closing parenthesis
+	 */
+	private static int skipVariation(String pgn, int start) {
+		int nesting = 0;
+		int i = start;
+		while (i < pgn.length()) {
+			char c = pgn.charAt(i);
+			if (c == '{') {
+				int end = pgn.indexOf('}', i);
+				i = (end < 0) ? pgn.length() : end;
+			} else if (c == '(') {
+				nesting+=1;
+			} else if (c == ')') {
+				nesting-=1;
+				if (nesting == 0) {
+					return i + 1;
+				}
+			}
+			i+=1;
+		}
+		return i;
+	}
+
+	/**
+	 * Enters the moves of the game just read in the book, scored by its result, and gets ready for the next game.
+	 */
+	private void finishGame() {
+		for (int i = 0; i < nGameMoves; i+=1) {
+
+			// Two points for a win, one for a draw, from the point of view of the side that moved.
+			int points;
+			if (result.equals("1-0")) {
+				points = (gamePlayers[i] == ChessGame.WHITE_PLAYER) ? 2 : 0;
+			} else if (result.equals("0-1")) {
+				points = (gamePlayers[i] == ChessGame.BLACK_PLAYER) ? 2 : 0;
+			} else if (result.equals("1/2-1/2")) {
+				points = 1;
+			} else {
+				points = 0;
+			}
+
+			Map<Integer, Integer> moves = book.get(gameKeys[i]);
+			if (moves == null) {
+				moves = new HashMap<Integer, Integer>();
+				book.put(gameKeys[i], moves);
+			}
+			Integer weight = moves.get(gameMoves[i]);
+			moves.put(gameMoves[i], ((weight == null) ? 0 : weight) + points);
+		}
+
+		nGames+=1;
+		startGame();
+	}
+
+	/**
+	 * Resets the position and the moves recorded for the next game.
+	 */
+	private void startGame() {
+		theSearch.getChessGame().loadFen(START_FEN);
+		result = "*";
+		followable = true;
+		inMovetext = false;
+		nGameMoves = 0;
+	}
+
+	/**
+	 * The book so far: for each position's key, the weight of each book move played there.
+	 */
+	private final Map<Long, Map<Integer, Integer>> book = new HashMap<Long, Map<Integer, Integer>>();
+
+	/**
+	 * How many plies of each game are entered in the book.
+	 */
+	private final int maxPlies;
+
+	/**
+	 * The number of games read.
+	 */
+	private int nGames = 0;
+
+	/**
+	 * The search whose game follows the game being read, and which generates the moves to resolve SAN against.
+	 */
+	private final ChessSearch theSearch;
+
+	/**
+	 * The result of the game being read: "1-0", "0-1", "1/2-1/2" or "*".
+	 */
+	private String result = "*";
+
+	/**
+	 * Whether every move of the game being read so far could be resolved.
+	 */
+	private boolean followable = true;
+
+	/**
+	 * Whether the moves of the game being read have started, so that the next tag pair belongs to the next game.
+	 */
+	private boolean inMovetext = false;
+
+	/**
+	 * The key, book move and player of each move of the game being read that goes into the book.
+	 */
+	private final long[] gameKeys = new long[MAX_PLIES];
+	private final int[] gameMoves = new int[MAX_PLIES];
+	private final int[] gamePlayers = new int[MAX_PLIES];
+
+	/**
+	 * The number of moves recorded for the game being read.
+	 */
+	private int nGameMoves = 0;
+
+	/**
+	 * The position every game starts from unless its tags give another.
+	 */
+	private static final String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
+
+	/**
+	 * The largest weight a book entry can hold.
+	 */
+	private static final int MAX_WEIGHT = 0xFFFF;
+
+	/**
+	 * The most plies of a game that can be entered in the book.
+	 */
+	private static final int MAX_PLIES = 1024;
+}
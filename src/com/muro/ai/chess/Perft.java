@@ -0,0 +1,350 @@
+package com.muro.ai.chess;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the move tree below a position to a fixed depth (a "perft"). The counts for well-known
+ * positions are published, so comparing against them validates the move generator, and the time taken measures its
+ * raw speed.
+ * 
+ * Usage: <code>Perft depth [divide] [parallel] [hash MB] [FEN]</code>. Without a FEN the standard starting position
+ * is used. With "divide" the count below each root move is printed as well, "parallel" splits the first two plies
+ * across a fork-join pool, and "hash" caches subtree counts in a table of the given size so that transpositions are
+ * only counted once.
+ */
+public class Perft {
+
+	public static void main(String[] args) {
+
+		if (args.length < 1) {
+			System.err.println("Usage: Perft depth [divide] [parallel] [hash MB] [FEN]");
+			return;
+		}
+
+		int depth = Integer.parseInt(args[0]);
+
+		// Everything after the depth and the options is the FEN.
+		int fenStart = 1;
+		boolean divide = false;
+		boolean parallel = false;
+		int hashSize = 0;
+		for (; fenStart < args.length; fenStart+=1) {
+			if (args[fenStart].equals("divide")) {
+				divide = true;
+			} else if (args[fenStart].equals("parallel")) {
+				parallel = true;
+			} else if (args[fenStart].equals("hash") && fenStart + 1 < args.length) {
+				hashSize = Integer.parseInt(args[++fenStart]);
+			} else {
+				break;
+			}
+		}
+
+		ChessGame aGame = new ChessGame();
+		if (args.length > fenStart) {
+			StringBuilder fen = new StringBuilder();
+			for (int i = fenStart; i < args.length; i+=1) {
+				fen.append(args[i]).append(' ');
+			}
+			aGame.loadFen(fen.toString());
+		} else {
+			aGame.initGame();
+		}
+
+		Perft thePerft = new Perft(aGame);
+		if (hashSize > 0) {
+			thePerft.setHashSize(hashSize);
+		}
+
+		long startTime = System.nanoTime();
+		long nodes;
+		if (divide) {
+			nodes = thePerft.divide(depth, System.out);
+		} else if (parallel) {
+			nodes = thePerft.perftParallel(depth);
+		} else {
+			nodes = thePerft.perft(depth);
+		}
+		long elapsed = Math.max(System.nanoTime() - startTime, 1);
+
+		System.out.println("Nodes: " + nodes);
+		System.out.println("Time: " + (elapsed / 1_000_000) + " ms");
+		System.out.println("NPS: " + (nodes * NANOS_PER_SECOND / elapsed));
+	}
+
+	/**
+	 * Constructs a new Perft for the specified game. The game itself is not modified.
+	 * 
+	 * @param toCount a ChessGame
+	 */
+	public Perft(ChessGame toCount) {
+		theSearch = new ChessSearch(toCount);
+		chessGame = theSearch.getChessGame();
+	}
+
+	/**
+	 * Allocates a table of the specified size in which subtree counts are cached, shared by every task of a parallel
+	 * count.
+	 * 
+	 * @param megabytes the size of the table, rounded down to a power of two entries
+	 */
+	public void setHashSize(int megabytes) {
+		perftHash = new PerftHash(megabytes);
+	}
+
+	/**
+	 * Counts the leaf nodes at the specified depth below the current position.
+	 * 
+	 * @param depth the number of plies to search
+	 * @return the number of leaf nodes
+	 */
+	public long perft(int depth) {
+		return count(depth, 0);
+	}
+
+	/**
+	 * Counts the leaf nodes at the specified depth below the current position, splitting the subtrees of the first
+	 * SPLIT_PLY plies into tasks run on the common fork-join pool. Each task counts on its own copy of the game.
+	 * 
+	 * @param depth the number of plies to search
+	 * @return the number of leaf nodes
+	 */
+	public long perftParallel(int depth) {
+		return ForkJoinPool.commonPool().invoke(new PerftTask(chessGame.snapshot(), depth, 0, perftHash, useBulkCounting));
+	}
+
+	/**
+	 * Counts the leaf nodes at the specified depth below each root move, printing one line per move followed by the
+	 * total.
+	 * 
+	 * @param depth the number of plies to search (at least one)
+	 * @param out where the per-move counts are printed
+	 * @return the total number of leaf nodes
+	 */
+	public long divide(int depth, PrintStream out) {
+
+		int[] moves = moveStack.get(0);
+		int nMoves = theSearch.generatePlayerMoves(chessGame.getSideToMove(), moves);
+
+		long total = 0;
+		for (int i = 0; i < nMoves; i+=1) {
+			chessGame.doMove(moves[i]);
+			long nodes = count(depth - 1, 1);
+			chessGame.undoMove(moves[i]);
+
+			out.println(Move.toString(moves[i]) + ": " + nodes);
+			total += nodes;
+		}
+
+		out.println("Moves: " + nMoves);
+		return total;
+	}
+
+	/**
+	 * Recursively counts the leaf nodes below the current position.
+	 * 
+	 * @param depth the number of plies left to search
+	 * @param ply the distance from the root, which selects the move buffer
+	 * @return the number of leaf nodes
+	 */
+	private long count(int depth, int ply) {
+
+		if (depth == 0) {
+			return 1;
+		}
+
+		// Has this position already been counted to this depth?
+		if (perftHash != null && depth > 1) {
+			long cached = perftHash.probe(chessGame.getHash(), depth);
+			if (cached >= 0) {
+				return cached;
+			}
+		}
+
+		int[] moves = moveStack.get(ply);
+		int nMoves = theSearch.generatePlayerMoves(chessGame.getSideToMove(), moves);
+
+		// Every generated move is legal, so one ply from the leaves the move count is the leaf count.
+		if (depth == 1 && useBulkCounting) {
+			return nMoves;
+		}
+
+		long total = 0;
+		for (int i = 0; i < nMoves; i+=1) {
+			chessGame.doMove(moves[i]);
+			total += count(depth - 1, ply + 1);
+			chessGame.undoMove(moves[i]);
+		}
+
+		if (perftHash != null && depth > 1) {
+			perftHash.store(chessGame.getHash(), depth, total);
+		}
+
+		return total;
+	}
+
+	/**
+	 * Counts the subtree below one position of a parallel perft, forking a task for each move until SPLIT_PLY is
+	 * reached and counting serially below that.
+	 */
+	private static final class PerftTask extends RecursiveTask<Long> {
+
+		PerftTask(ChessGame.Snapshot position, int depth, int ply, PerftHash perftHash, boolean useBulkCounting) {
+			this.position = position;
+			this.depth = depth;
+			this.ply = ply;
+			this.perftHash = perftHash;
+			this.useBulkCounting = useBulkCounting;
+		}
+
+		@Override
+		protected Long compute() {
+
+			// Each task counts on its own copy of the position.
+			Perft aPerft = new Perft(new ChessGame(position));
+			aPerft.perftHash = perftHash;
+			aPerft.useBulkCounting = useBulkCounting;
+
+			// Small subtrees are not worth the overhead of another task.
+			if (ply >= SPLIT_PLY || depth <= SPLIT_MIN_DEPTH) {
+				return aPerft.count(depth, 0);
+			}
+
+			ChessGame aGame = aPerft.chessGame;
+			int[] moves = aPerft.moveStack.get(0);
+			int nMoves = aPerft.theSearch.generatePlayerMoves(aGame.getSideToMove(), moves);
+
+			// Fork one task for the position after each move.
+			List<PerftTask> subtasks = new ArrayList<PerftTask>(nMoves);
+			for (int i = 0; i < nMoves; i+=1) {
+				aGame.doMove(moves[i]);
+				subtasks.add(new PerftTask(aGame.snapshot(), depth - 1, ply + 1, perftHash, useBulkCounting));
+				aGame.undoMove(moves[i]);
+			}
+
+			long total = 0;
+			for (PerftTask subtask : invokeAll(subtasks)) {
+				total += subtask.join();
+			}
+			return total;
+		}
+
+		/**
+		 * The position whose subtree is counted.
+		 */
+		private final ChessGame.Snapshot position;
+
+		/**
+		 * The number of plies left to count.
+		 */
+		private final int depth;
+
+		/**
+		 * The distance of the position from the root of the whole count.
+		 */
+		private final int ply;
+
+		/**
+		 * The table of subtree counts shared by every task, or null.
+		 */
+		private final PerftHash perftHash;
+
+		/**
+		 * Whether the last ply is bulk counted.
+		 */
+		private final boolean useBulkCounting;
+
+		private static final long serialVersionUID = 1L;
+	}
+
+	/**
+	 * A lock-free table of subtree counts keyed by position hash and depth, shared between threads. Each entry is a
+	 * pair of longs: the data (count and depth) and the hash XORed with the data. A reader accepts an entry only if
+	 * the two words still XOR to its hash, so an entry torn by two threads writing at once is simply a miss.
+	 */
+	private static final class PerftHash {
+
+		PerftHash(int megabytes) {
+			long entries = Long.highestOneBit(Math.max((megabytes * 1024L * 1024L) / ENTRY_SIZE, 1));
+			table = new long[(int) Math.min(entries, 1 << 29) * 2];
+			mask = table.length / 2 - 1;
+		}
+
+		/**
+		 * Returns the cached count for the specified position and depth, or -1 if there is none.
+		 */
+		long probe(long hash, int depth) {
+			int index = ((int) hash & mask) * 2;
+			long data = table[index + 1];
+			if ((table[index] ^ data) == hash && (data & DEPTH_MASK) == depth) {
+				return data >>> DEPTH_BITS;
+			}
+			return -1;
+		}
+
+		/**
+		 * Caches the count for the specified position and depth, replacing whatever was in its slot.
+		 */
+		void store(long hash, int depth, long count) {
+			int index = ((int) hash & mask) * 2;
+			long data = (count << DEPTH_BITS) | depth;
+			table[index] = hash ^ data;
+			table[index + 1] = data;
+		}
+
+		/**
+		 * Two longs per entry: the checked hash and the data.
+		 */
+		private final long[] table;
+
+		/**
+		 * The number of entries minus one.
+		 */
+		private final int mask;
+
+		private static final int ENTRY_SIZE = 16;
+		private static final int DEPTH_BITS = 8;
+		private static final long DEPTH_MASK = (1L << DEPTH_BITS) - 1;
+	}
+
+	/**
+	 * Counts the moves generated at the last ply instead of making each one (only correct with legal move generation).
+	 */
+	protected boolean useBulkCounting = true;
+
+	/**
+	 * Caches subtree counts, or null to count every subtree.
+	 */
+	private PerftHash perftHash = null;
+
+	/**
+	 * Generates the moves at each node.
+	 */
+	private final ChessSearch theSearch;
+
+	/**
+	 * The search's copy of the game, on which the moves are made.
+	 */
+	private final ChessGame chessGame;
+
+	/**
+	 * The move buffers for each ply.
+	 */
+	private final MoveStack moveStack = new MoveStack(ChessSearch.MAX_PLY);
+
+	private static final long NANOS_PER_SECOND = 1_000_000_000;
+
+	/**
+	 * Parallel counts fork a task for every position up to this many plies from the root.
+	 */
+	private static final int SPLIT_PLY = 2;
+
+	/**
+	 * Positions this close to the leaves are always counted serially.
+	 */
+	private static final int SPLIT_MIN_DEPTH = 2;
+}
@@ -0,0 +1,143 @@
+package com.muro.ai.chess;
+
+/**
+ * Searches on the opponent's clock. Once our move has been played, the ponderer searches the position after the reply
+ * the principal variation expects, as if that reply had already been played, on a background thread. Every result
+ * goes into the transposition table, so the time is not wasted even when the opponent plays something else.
+ *
+ * When the opponent does play the expected reply (a ponder hit), the search simply carries on with a real time limit
+ * measured from the moment pondering started, and returns at once if it has already searched for long enough.
+ * Otherwise the ponder search is cancelled and a normal search starts with a warm table.
+ *
+ * Without an expected reply, the current position itself is searched from the opponent's point of view, which fills
+ * the table with the positions after each of their replies.
+ */
+final class Ponderer {
+
+	/**
+	 * Constructs a ponderer that runs the specified searches, which must all be on the position reached after our move.
+	 *
+	 * @param theSearch the main search
+	 * @param helpers the Lazy SMP helper searches
+	 * @param ponderMove the opponent's reply to search after, or Move.NONE to search the position itself
+	 */
+	Ponderer(ChessSearch theSearch, ChessSearch[] helpers, int ponderMove) {
+		this.theSearch = theSearch;
+		this.helpers = helpers;
+		this.ponderMove = ponderMove;
+	}
+
+	/**
+	 * Plays the expected reply in every search and starts pondering on a background thread.
+	 */
+	void start() {
+
+		// The searches are idle until the thread starts, so their positions can be changed here.
+		if (ponderMove != Move.NONE) {
+			theSearch.getChessGame().performMove(Move.toString(ponderMove));
+			for (ChessSearch helper : helpers) {
+				helper.getChessGame().performMove(Move.toString(ponderMove));
+			}
+		}
+		final int team = theSearch.getChessGame().getSideToMove();
+
+		// Start the clock now, so that a ponder hit can change the time limit even before the thread gets going.
+		theSearch.startClock(PONDER_TIME_LIMIT);
+
+		thread = new Thread(new Runnable() {
+			public void run() {
+				bestMove = ChessSearch.search(theSearch, helpers, team, PONDER_TIME_LIMIT, ChessSearch.MAX_DEPTH);
+			}
+		}, "ponder");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Indicates whether the opponent's move is the reply being pondered.
+	 *
+	 * @param opponentMove the opponent's move, in our modified algebraic notation
+	 * @return true if the ponder search is searching the position after that move
+	 */
+	boolean isPonderHit(String opponentMove) {
+		return ponderMove != Move.NONE && Move.toString(ponderMove).equals(opponentMove);
+	}
+
+	/**
+	 * Turns the ponder search into the real search for our next move, after a ponder hit, and waits for its result.
+	 * The time spent pondering counts towards the time limit.
+	 *
+	 * @param timeLimit the maximum duration of the search, in seconds, measured from when pondering started
+	 * @return a packed move (see Move) specifying the best move
+	 */
+	int finish(int timeLimit) {
+		theSearch.setTimeLimit(timeLimit);
+		join();
+		return bestMove;
+	}
+
+	/**
+	 * Stops the ponder search, waits for it to let go of the transposition table and takes the expected reply back, so
+	 * that the searches are on the position after our move again.
+	 */
+	void cancel() {
+		stop();
+
+		if (ponderMove != Move.NONE) {
+			theSearch.getChessGame().undoLastMove();
+			for (ChessSearch helper : helpers) {
+				helper.getChessGame().undoLastMove();
+			}
+		}
+	}
+
+	/**
+	 * Stops the ponder search and waits for it to let go of the transposition table, leaving the searches on the
+	 * position being pondered. After a ponder hit, that is the real position.
+	 */
+	void stop() {
+		theSearch.stop();
+		join();
+	}
+
+	/**
+	 * Waits for the ponder thread to finish.
+	 */
+	private void join() {
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	/**
+	 * The main ponder search.
+	 */
+	private final ChessSearch theSearch;
+
+	/**
+	 * The Lazy SMP helpers of the ponder search.
+	 */
+	private final ChessSearch[] helpers;
+
+	/**
+	 * The opponent's reply being pondered, or Move.NONE.
+	 */
+	private final int ponderMove;
+
+	/**
+	 * The thread running the ponder search.
+	 */
+	private Thread thread = null;
+
+	/**
+	 * The best move found, set when the ponder search finishes.
+	 */
+	private volatile int bestMove = Move.NONE;
+
+	/**
+	 * How long to ponder if never told otherwise, in seconds; the opponent will have moved long before.
+	 */
+	private static final int PONDER_TIME_LIMIT = 24 * 60 * 60;
+}
@@ -1,8 +1,6 @@
 package com.muro.ai.chess;
 
-import java.util.List;
-
-import com.muro.ai.chess.ChessGame.ChessMove;
+import java.util.Arrays;
 
 public class TestMoveGenerator {
 
@@ -25,22 +23,22 @@ public class TestMoveGenerator {
 		// Add the king to white's piece list.
 		emptyBoard.whitePieces.add(whiteKing);
 		// Place the king in it's starting position.
-		emptyBoard.theBoard[whiteKing.location] = whiteKing;
+		emptyBoard.placePiece(whiteKing, whiteKing.location);
 
 		// Create a new pawn and place it on the board.
 		ChessPiece blackPawn = new ChessPiece(ChessPiece.PAWN, 20, ChessGame.BLACK_PLAYER);
 		// Add the king to white's piece list.
 		//emptyBoard.whitePieces.add(whitePawn);
 		// Place the pawn in a position.
-		emptyBoard.theBoard[blackPawn.location] = blackPawn;
+		emptyBoard.placePiece(blackPawn, blackPawn.location);
 		
-		List<ChessMove> moves = testPiece(whiteKing, emptyBoard);
+		int[] moves = testPiece(whiteKing, emptyBoard);
 
 		System.out.println("Printing available moves from the following chess game...");
 		System.out.println(emptyBoard);
 
-		for (ChessMove move : moves) {
-			System.out.println(move);
+		for (int move : moves) {
+			System.out.println(Move.toString(move));
 		}
 	}
 	
@@ -54,7 +52,7 @@ public class TestMoveGenerator {
 		// Add the king to white's piece list.
 		emptyBoard.whitePieces.add(whitePawn);
 		// Place the king in it's starting position.
-		emptyBoard.theBoard[whitePawn.location] = whitePawn;
+		emptyBoard.placePiece(whitePawn, whitePawn.location);
 
 		// Create a new pawn and place it on the board.
 		ChessPiece blackPawn1 = new ChessPiece(ChessPiece.PAWN, 66, ChessGame.BLACK_PLAYER);
@@ -63,40 +61,41 @@ public class TestMoveGenerator {
 		emptyBoard.blackPieces.add(blackPawn2);
 		
 		// Place the pawn in a position.
-		emptyBoard.theBoard[blackPawn1.location] = blackPawn1;
-		emptyBoard.theBoard[blackPawn2.location] = blackPawn2;
+		emptyBoard.placePiece(blackPawn1, blackPawn1.location);
+		emptyBoard.placePiece(blackPawn2, blackPawn2.location);
 		
-		List<ChessMove> moves = testPiece(whitePawn, emptyBoard);
+		int[] moves = testPiece(whitePawn, emptyBoard);
 
 		System.out.println("Printing available moves from the following chess game...");
 		System.out.println(emptyBoard);
 
-		for (ChessMove move : moves) {
-			System.out.println(move);
+		for (int move : moves) {
+			System.out.println(Move.toString(move));
 		}
 		
 		// Move the pawn and test again.
-		emptyBoard.theBoard[whitePawn.location] = null;
-		whitePawn.location = 100;
-		emptyBoard.theBoard[whitePawn.location] = whitePawn;
+		emptyBoard.removePiece(whitePawn.location);
+		emptyBoard.placePiece(whitePawn, 100);
 		
 		moves = testPiece(whitePawn, emptyBoard);
 
 		System.out.println("Printing available moves from the following chess game...");
 		System.out.println(emptyBoard);
 
-		for (ChessMove move : moves) {
-			System.out.println(move);
+		for (int move : moves) {
+			System.out.println(Move.toString(move));
 		}
 	
 	}
 
-	public static List<ChessMove> testPiece(ChessPiece toTest, ChessGame theBoard) {
+	public static int[] testPiece(ChessPiece toTest, ChessGame theBoard) {
 
 		ChessSearch pieceTests = new ChessSearch(theBoard);
 
 		// Test the move generator...
-		return pieceTests.generateMoves(toTest, toTest.owner);
+		int[] moves = new int[ChessSearch.MAX_MOVES];
+		int nMoves = pieceTests.generateMoves(toTest, toTest.owner, moves, 0);
+		return Arrays.copyOf(moves, nMoves);
 	}
 
 }
@@ -0,0 +1,174 @@
+package com.muro.ai.chess;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size hash table of search results keyed by the Zobrist hash of a position, which may be shared by any number
+ * of searching threads without locks.
+ *
+ * Each entry is a pair of longs: the data word and the position's hash XORed with the data word. The two words are
+ * written separately, so a reader may see half of one thread's write and half of another's; it accepts an entry only
+ * if the two words XOR back to the hash it is looking for, which turns a torn entry into a simple miss.
+ *
+ * The bits of the data word are laid out as follows (least significant first):
+ *
+ * 		bits  0-27	best move (see Move), or Move.NONE
+ *		bits 28-43	score, as a signed 16-bit value
+ *		bits 44-51	depth (plies searched below the position)
+ *		bits 52-53	bound type (UPPER_BOUND, LOWER_BOUND or EXACT)
+ *		bits 54-59	age (the search that stored the entry)
+ *
+ * The bound type is never zero, so a data word of zero always means "no entry".
+ */
+public final class TranspositionTable {
+
+	/**
+	 * Constructs a transposition table of (at most) the specified size.
+	 *
+	 * @param megabytes the size of the table, rounded down to a power of two entries
+	 */
+	public TranspositionTable(int megabytes) {
+		long entries = Long.highestOneBit(Math.max((megabytes * 1024L * 1024L) / ENTRY_SIZE, 1));
+		table = new long[(int) Math.min(entries, MAX_ENTRIES) * 2];
+		mask = table.length / 2 - 1;
+	}
+
+	/**
+	 * Looks up the specified position.
+	 *
+	 * @param hash the position's Zobrist hash
+	 * @return the entry's data word, or zero if the position is not in the table
+	 */
+	public long probe(long hash) {
+		int index = ((int) hash & mask) * 2;
+		long data = table[index + 1];
+		if ((table[index] ^ data) == hash) {
+			return data;
+		}
+		return 0L;
+	}
+
+	/**
+	 * Stores a search result for the specified position. The slot's current entry is kept if it belongs to a different
+	 * position, was stored by the current search and was searched deeper. A result without a best move keeps the best
+	 * move already stored for the same position.
+	 *
+	 * @param hash the position's Zobrist hash
+	 * @param move the best move found, or Move.NONE
+	 * @param score the score, which must fit in 16 bits
+	 * @param depth the number of plies searched below the position
+	 * @param bound UPPER_BOUND, LOWER_BOUND or EXACT
+	 */
+	public void store(long hash, int move, int score, int depth, int bound) {
+		int index = ((int) hash & mask) * 2;
+		long existing = table[index + 1];
+		boolean samePosition = (table[index] ^ existing) == hash;
+
+		if (existing != 0 && !samePosition && age(existing) == age && depth(existing) > depth) {
+			return;
+		}
+
+		if (move == Move.NONE && samePosition) {
+			move = move(existing);
+		}
+
+		long data = (move & MOVE_MASK)
+				| ((long) (score & SCORE_MASK) << SCORE_SHIFT)
+				| ((long) Math.min(Math.max(depth, 0), DEPTH_MASK) << DEPTH_SHIFT)
+				| ((long) bound << BOUND_SHIFT)
+				| ((long) age << AGE_SHIFT);
+		table[index] = hash ^ data;
+		table[index + 1] = data;
+	}
+
+	/**
+	 * Marks the start of a new search, so that entries stored by earlier searches are replaced first.
+	 */
+	public void newSearch() {
+		age = (age + 1) & AGE_MASK;
+	}
+
+	/**
+	 * Removes every entry from the table.
+	 */
+	public void clear() {
+		Arrays.fill(table, 0L);
+	}
+
+	/**
+	 * Returns the best move held by the specified entry.
+	 */
+	public static int move(long entry) {
+		return (int) (entry & MOVE_MASK);
+	}
+
+	/**
+	 * Returns the score held by the specified entry.
+	 */
+	public static int score(long entry) {
+		return (short) (entry >>> SCORE_SHIFT);
+	}
+
+	/**
+	 * Returns the depth held by the specified entry.
+	 */
+	public static int depth(long entry) {
+		return (int) ((entry >>> DEPTH_SHIFT) & DEPTH_MASK);
+	}
+
+	/**
+	 * Returns the bound type held by the specified entry.
+	 */
+	public static int bound(long entry) {
+		return (int) ((entry >>> BOUND_SHIFT) & BOUND_MASK);
+	}
+
+	/**
+	 * Returns the age held by the specified entry.
+	 */
+	private static int age(long entry) {
+		return (int) ((entry >>> AGE_SHIFT) & AGE_MASK);
+	}
+
+	/**
+	 * Two longs per entry: the hash XORed with the data, then the data.
+	 */
+	private final long[] table;
+
+	/**
+	 * The number of entries minus one.
+	 */
+	private final int mask;
+
+	/**
+	 * The age of the current search, stored with every entry it writes.
+	 */
+	private volatile int age = 0;
+
+	/**
+	 * The score is at most the stored score (every move failed low).
+	 */
+	public static final int UPPER_BOUND = 1;
+
+	/**
+	 * The score is at least the stored score (a move failed high).
+	 */
+	public static final int LOWER_BOUND = 2;
+
+	/**
+	 * The stored score is exact.
+	 */
+	public static final int EXACT = 3;
+
+	private static final int ENTRY_SIZE = 16;
+	private static final long MAX_ENTRIES = 1 << 29;
+	private static final long MOVE_MASK = (1L << 28) - 1;
+	private static final int SCORE_SHIFT = 28;
+	private static final int SCORE_MASK = 0xFFFF;
+	private static final int DEPTH_SHIFT = 44;
+	private static final int DEPTH_MASK = 0xFF;
+	private static final int BOUND_SHIFT = 52;
+	private static final int BOUND_MASK = 0x3;
+	private static final int AGE_SHIFT = 54;
+	private static final int AGE_MASK = 0x3F;
+}
@@ -0,0 +1,92 @@
+package com.muro.ai.chess;
+
+import java.util.Random;
+
+/**
+ * The random keys used to build the 64-bit Zobrist hash of a {@link ChessGame} position.
+ *
+ * The hash is the XOR of one key for every piece on the board (by owner, piece value and 0x88 square), one key for
+ * the current castling rights, one key for the file of the en passant square (if any) and, when black is to move,
+ * the side key. The keys are generated from a fixed seed so that hashes are stable between runs.
+ */
+public final class Zobrist {
+
+	private Zobrist() {
+	}
+
+	/**
+	 * Returns the key for the specified piece standing on the specified square.
+	 *
+	 * @param owner the player who owns the piece
+	 * @param value the piece type
+	 * @param square an index into the 0x88 board
+	 * @return a 64-bit key
+	 */
+	public static long pieceKey(int owner, int value, int square) {
+		return PIECE_KEYS[owner][value][square];
+	}
+
+	/**
+	 * Returns the key for the specified en passant square, or zero if there is no en passant square.
+	 *
+	 * @param square an index into the 0x88 board or ChessGame.NO_SQUARE
+	 * @return a 64-bit key
+	 */
+	public static long enPassantKey(int square) {
+		return (square == ChessGame.NO_SQUARE) ? 0L : EN_PASSANT_KEYS[square & 7];
+	}
+
+	/**
+	 * Returns the key for the specified set of castling rights.
+	 *
+	 * @param castlingRights a combination of the ChessGame castling flags
+	 * @return a 64-bit key
+	 */
+	public static long castlingKey(int castlingRights) {
+		return CASTLING_KEYS[castlingRights];
+	}
+
+	/**
+	 * The seed used to generate every key.
+	 */
+	private static final long SEED = 0x5EED_C0DE_2013L;
+
+	/**
+	 * One key for each owner, piece value and square on the 0x88 board.
+	 */
+	private static final long[][][] PIECE_KEYS = new long[2][ChessPiece.PIECE_SYMBOLS.length][128];
+
+	/**
+	 * One key for each combination of the four castling rights.
+	 */
+	private static final long[] CASTLING_KEYS = new long[16];
+
+	/**
+	 * One key for each file on which an en passant capture may be possible.
+	 */
+	private static final long[] EN_PASSANT_KEYS = new long[8];
+
+	/**
+	 * XORed into the hash whenever black is to move.
+	 */
+	public static final long SIDE_KEY;
+
+	static {
+		Random random = new Random(SEED);
+		for (long[][] ownerKeys : PIECE_KEYS) {
+			for (long[] pieceKeys : ownerKeys) {
+				for (int square = 0; square < pieceKeys.length; square+=1) {
+					pieceKeys[square] = random.nextLong();
+				}
+			}
+		}
+		// No castling rights at all contributes nothing, which keeps hand-built boards simple.
+		for (int rights = 1; rights < CASTLING_KEYS.length; rights+=1) {
+			CASTLING_KEYS[rights] = random.nextLong();
+		}
+		for (int file = 0; file < EN_PASSANT_KEYS.length; file+=1) {
+			EN_PASSANT_KEYS[file] = random.nextLong();
+		}
+		SIDE_KEY = random.nextLong();
+	}
+}